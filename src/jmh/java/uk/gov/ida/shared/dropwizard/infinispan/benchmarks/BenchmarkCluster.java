@@ -0,0 +1,169 @@
+package uk.gov.ida.shared.dropwizard.infinispan.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+import org.infinispan.Cache;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanBundle;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.text.MessageFormat.format;
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+/**
+ * Starts one or more nodes in this JVM through {@link InfinispanBundle}, configured from YAML the
+ * same way an application would be. Clustered nodes join each other over loopback.
+ */
+public class BenchmarkCluster implements AutoCloseable {
+
+    public static final String CACHE_NAME = "benchmark";
+    public static final String LOADER_CACHE_NAME = "benchmark-loader";
+
+    private static final int BASE_PORT = 7900;
+    private static final long JOIN_TIMEOUT_MILLIS = 60000;
+
+    private final List<InfinispanCacheManager> nodes = new ArrayList<>();
+    private final Path workingDirectory;
+    private final CacheType type;
+    private final boolean persistence;
+    private final int clusterSize;
+    private final String extraYaml;
+    private final String cacheYaml;
+
+    private BenchmarkCluster(CacheType type, boolean persistence, int clusterSize, String extraYaml, String cacheYaml) throws IOException {
+        this.type = type;
+        this.persistence = persistence;
+        this.clusterSize = clusterSize;
+        this.extraYaml = extraYaml;
+        this.cacheYaml = cacheYaml;
+        this.workingDirectory = Files.createTempDirectory("infinispan-benchmark");
+    }
+
+    /**
+     * Standalone caches run as a single node; clustered types run as {@code clusterSize} nodes.
+     */
+    public static BenchmarkCluster start(CacheType type, boolean persistence, int clusterSize) throws Exception {
+        return start(type, persistence, clusterSize, "");
+    }
+
+    public static BenchmarkCluster start(CacheType type, boolean persistence, int clusterSize, String extraYaml) throws Exception {
+        return start(type, persistence, clusterSize, extraYaml, "");
+    }
+
+    /**
+     * @param extraYaml top level configuration appended to each node's
+     * @param cacheYaml named cache configuration for {@link #CACHE_NAME}, for example {@code "mode: distributed"}
+     */
+    public static BenchmarkCluster start(CacheType type, boolean persistence, int clusterSize, String extraYaml, String cacheYaml) throws Exception {
+        int size = type == CacheType.standalone ? 1 : clusterSize;
+        BenchmarkCluster cluster = new BenchmarkCluster(type, persistence, size, extraYaml, cacheYaml);
+        if (type == CacheType.clustered) {
+            BenchmarkKeyStores.create(cluster.workingDirectory);
+        }
+        for (int i = 0; i < size; i++) {
+            cluster.startNode(i);
+        }
+        cluster.awaitMembers(size);
+        return cluster;
+    }
+
+    public InfinispanCacheManager node(int index) {
+        return nodes.get(index);
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    public <K, V> Cache<K, V> cache(int index) {
+        return nodes.get(index).getCache(CACHE_NAME);
+    }
+
+    /**
+     * Starts another node at the next index and waits until every running node sees it.
+     */
+    public InfinispanCacheManager startNode(int index) throws Exception {
+        InfinispanBundle bundle = new InfinispanBundle();
+        MetricRegistry metrics = new MetricRegistry();
+        InfinispanConfiguration configuration = configuration(index);
+        Environment environment = new Environment(
+                "benchmark-node-" + index, Jackson.newObjectMapper(), Validators.newValidator(), metrics, getClass().getClassLoader());
+        bundle.run(() -> configuration, environment);
+        InfinispanCacheManager node = bundle.getCacheManager();
+        node.start();
+        // start the transport and the benchmark caches before anything is measured
+        node.getCache(CACHE_NAME);
+        node.getCache(LOADER_CACHE_NAME);
+        nodes.add(node);
+        return node;
+    }
+
+    public void stopNode(InfinispanCacheManager node) {
+        node.stop();
+        nodes.remove(node);
+    }
+
+    public void awaitMembers(int expected) throws InterruptedException {
+        if (type == CacheType.standalone) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + JOIN_TIMEOUT_MILLIS;
+        while (!nodes.stream().allMatch(node -> node.getNodeCount() == expected)) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(format("Nodes did not form a cluster of {0} within {1}ms", expected, JOIN_TIMEOUT_MILLIS));
+            }
+            Thread.sleep(50);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (InfinispanCacheManager node : nodes) {
+            node.stop();
+        }
+        nodes.clear();
+    }
+
+    private InfinispanConfiguration configuration(int index) throws Exception {
+        String initialHosts = IntStream.range(0, Math.max(clusterSize, index + 1))
+                .mapToObj(i -> "127.0.0.1[" + (BASE_PORT + i) + "]")
+                .collect(Collectors.joining(","));
+        StringBuilder yaml = new StringBuilder()
+                .append("type: ").append(type).append('\n')
+                .append("cacheManagerName: benchmark-node-").append(index).append('\n')
+                .append("bindAddress: 127.0.0.1\n")
+                .append("port: ").append(BASE_PORT + index).append('\n')
+                .append("initialHosts: ").append(initialHosts).append('\n')
+                .append("clusterName: benchmark\n")
+                .append("expiration: 1h\n")
+                .append("persistenceToFileEnabled: ").append(persistence).append('\n')
+                .append("persistenceFileLocation: ").append(workingDirectory.resolve("node-" + index)).append('\n')
+                .append("caches:\n")
+                .append("  ").append(LOADER_CACHE_NAME).append(":\n")
+                .append("    eviction:\n")
+                .append("      maxEntries: 100000\n");
+        if (!cacheYaml.isEmpty()) {
+            yaml.append("  ").append(CACHE_NAME).append(":\n");
+            for (String line : cacheYaml.split("\n")) {
+                yaml.append("    ").append(line).append('\n');
+            }
+        }
+        if (type == CacheType.clustered) {
+            yaml.append(BenchmarkKeyStores.yaml(workingDirectory));
+        }
+        yaml.append(extraYaml);
+
+        return fromYaml(yaml.toString());
+    }
+}
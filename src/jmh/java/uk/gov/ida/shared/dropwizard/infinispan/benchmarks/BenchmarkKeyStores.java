@@ -0,0 +1,59 @@
+package uk.gov.ida.shared.dropwizard.infinispan.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Generates throwaway key stores for the AUTH and ENCRYPT protocols in the secured JGroups stack.
+ */
+class BenchmarkKeyStores {
+
+    private static final String ALIAS = "benchmark";
+    private static final String PASSWORD = "benchmark";
+
+    private BenchmarkKeyStores() {
+    }
+
+    static void create(Path directory) throws IOException, InterruptedException {
+        keytool("-genkeypair", "-alias", ALIAS, "-keyalg", "RSA", "-keysize", "2048", "-dname", "CN=benchmark", "-validity", "1",
+                "-storetype", "JKS", "-keystore", authKeyStore(directory), "-storepass", PASSWORD, "-keypass", PASSWORD);
+        keytool("-genseckey", "-alias", ALIAS, "-keyalg", "AES", "-keysize", "128",
+                "-storetype", "JCEKS", "-keystore", encryptKeyStore(directory), "-storepass", PASSWORD, "-keypass", PASSWORD);
+    }
+
+    static String yaml(Path directory) {
+        return "authConfiguration:\n" +
+                "  authValue: " + ALIAS + "\n" +
+                "  keyStorePath: " + authKeyStore(directory) + "\n" +
+                "  keyStorePassword: " + PASSWORD + "\n" +
+                "  keyStoreType: JKS\n" +
+                "  certAlias: " + ALIAS + "\n" +
+                "  cipherType: RSA\n" +
+                "encryptConfiguration:\n" +
+                "  keyStoreName: " + encryptKeyStore(directory) + "\n" +
+                "  keyStorePassword: " + PASSWORD + "\n" +
+                "  encryptionKeyAlias: " + ALIAS + "\n";
+    }
+
+    private static String authKeyStore(Path directory) {
+        return directory.resolve("auth.jks").toString();
+    }
+
+    private static String encryptKeyStore(Path directory) {
+        return directory.resolve("encrypt.jceks").toString();
+    }
+
+    private static void keytool(String... arguments) throws IOException, InterruptedException {
+        String[] command = new String[arguments.length + 1];
+        command[0] = Paths.get(System.getProperty("java.home"), "bin", "keytool").toString();
+        System.arraycopy(arguments, 0, command, 1, arguments.length);
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException(format("keytool failed: {0}", Arrays.toString(arguments)));
+        }
+    }
+}
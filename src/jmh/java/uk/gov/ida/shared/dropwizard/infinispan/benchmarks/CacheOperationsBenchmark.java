@@ -0,0 +1,103 @@
+package uk.gov.ida.shared.dropwizard.infinispan.benchmarks;
+
+import org.infinispan.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
+import uk.gov.ida.shared.dropwizard.infinispan.util.LoadingCache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-node latency of the common cache operations for each {@link CacheType}, with and without
+ * persistence. Operations run against the first node; clustered types replicate to the others.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CacheOperationsBenchmark {
+
+    private static final int KEY_COUNT = 10000;
+    private static final int BATCH_SIZE = 100;
+    private static final String VALUE = "a value roughly the size of a small session attribute";
+
+    @Param({"standalone", "insecure", "clustered"})
+    public CacheType type;
+
+    @Param({"false", "true"})
+    public boolean persistence;
+
+    @Param({"3"})
+    public int clusterSize;
+
+    private BenchmarkCluster cluster;
+    private Cache<String, String> cache;
+    private LoadingCache<String, String> loadingCache;
+    private final AtomicLong missingKeys = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void startCluster() throws Exception {
+        cluster = BenchmarkCluster.start(type, persistence, clusterSize);
+        cache = cluster.cache(0);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            cache.put(key(i), VALUE);
+        }
+        loadingCache = cluster.node(0).getLoadingCache(BenchmarkCluster.LOADER_CACHE_NAME, key -> VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopCluster() {
+        cluster.close();
+    }
+
+    @Benchmark
+    public String get() {
+        return cache.get(randomKey());
+    }
+
+    @Benchmark
+    public String put() {
+        return cache.put(randomKey(), VALUE);
+    }
+
+    @Benchmark
+    public void putAll() {
+        Map<String, String> batch = new HashMap<>(BATCH_SIZE * 2);
+        int first = ThreadLocalRandom.current().nextInt(KEY_COUNT - BATCH_SIZE);
+        for (int i = first; i < first + BATCH_SIZE; i++) {
+            batch.put(key(i), VALUE);
+        }
+        cache.putAll(batch);
+    }
+
+    @Benchmark
+    public String loaderMiss() {
+        return loadingCache.get("missing-" + missingKeys.incrementAndGet());
+    }
+
+    private static String randomKey() {
+        return key(ThreadLocalRandom.current().nextInt(KEY_COUNT));
+    }
+
+    private static String key(int index) {
+        return "key-" + index;
+    }
+}
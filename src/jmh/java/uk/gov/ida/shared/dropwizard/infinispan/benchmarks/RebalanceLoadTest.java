@@ -0,0 +1,349 @@
+package uk.gov.ida.shared.dropwizard.infinispan.benchmarks;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import org.infinispan.Cache;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
+import org.infinispan.statetransfer.StateTransferManager;
+import org.jgroups.JChannel;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.format;
+
+/**
+ * Drives a mix of reads and writes at a cluster of nodes in this JVM while nodes join and leave,
+ * to see how replication and state transfer behave under load.
+ * <p/>
+ * After a steady period each cycle starts one more node, waits for its state transfer to finish,
+ * lets the cluster settle and then stops that node again. A line is printed every second, and a
+ * summary at the end gives each phase's throughput and latency, how long each rebalance took, the
+ * bytes received by the cluster's channels while it ran and the p99 latency relative to the
+ * steady period. Options are given as {@code name=value} arguments:
+ * <ul>
+ * <li>{@code type} - {@code insecure} (default) or {@code clustered}</li>
+ * <li>{@code nodes} - nodes running before the first join, 3 by default</li>
+ * <li>{@code cycles} - join and leave cycles, 2 by default</li>
+ * <li>{@code threads} - load generating threads, 8 by default</li>
+ * <li>{@code writeRatio} - proportion of operations which are puts, 0.2 by default</li>
+ * <li>{@code keys} - entries written before the run and chosen from during it, 20000 by default</li>
+ * <li>{@code valueSize} - bytes per value, 512 by default</li>
+ * <li>{@code settle} - seconds of steady load before and between joins and leaves, 10 by default</li>
+ * <li>{@code mode} - the cache's mode, {@code replicated} (default) or {@code distributed}</li>
+ * <li>{@code awaitInitialTransfer}, {@code stateTransferTimeout} and {@code persistence} - passed to the nodes' configuration</li>
+ * </ul>
+ */
+public class RebalanceLoadTest {
+
+    private static final long REBALANCE_TIMEOUT_MILLIS = 120000;
+    private static final long LEAVE_GRACE_MILLIS = 100;
+
+    private final Map<String, String> options;
+    private final int threads;
+    private final double writeRatio;
+    private final int keys;
+    private final byte[] value;
+    private final long settleMillis;
+
+    private volatile List<Cache<String, byte[]>> targets = new ArrayList<>();
+    private final AtomicReference<Window> phase = new AtomicReference<>();
+    private final AtomicReference<Window> second = new AtomicReference<>();
+    private final List<Window> phases = new ArrayList<>();
+    private final List<String> rebalances = new ArrayList<>();
+    private final Map<InfinispanCacheManager, Long> receivedBytesSeen = new HashMap<>();
+    private long receivedBytes;
+    private volatile boolean running = true;
+
+    private BenchmarkCluster cluster;
+
+    private RebalanceLoadTest(Map<String, String> options) {
+        this.options = options;
+        this.threads = Integer.parseInt(option("threads", "8"));
+        this.writeRatio = Double.parseDouble(option("writeRatio", "0.2"));
+        this.keys = Integer.parseInt(option("keys", "20000"));
+        this.value = new byte[Integer.parseInt(option("valueSize", "512"))];
+        this.settleMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(option("settle", "10")));
+        ThreadLocalRandom.current().nextBytes(value);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] option = arg.split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Options must be given as name=value, not " + arg);
+            }
+            options.put(option[0], option[1]);
+        }
+        new RebalanceLoadTest(options).run();
+        System.exit(0);
+    }
+
+    private void run() throws Exception {
+        CacheType type = CacheType.valueOf(option("type", "insecure"));
+        if (type == CacheType.standalone) {
+            throw new IllegalArgumentException("The load test needs a clustered cache type");
+        }
+        int nodes = Integer.parseInt(option("nodes", "3"));
+        int cycles = Integer.parseInt(option("cycles", "2"));
+        String extraYaml = format("awaitInitialTransfer: %s%nstateTransferTimeout: %s%n",
+                option("awaitInitialTransfer", "true"), option("stateTransferTimeout", "5"));
+        String cacheYaml = "mode: " + option("mode", "replicated");
+
+        cluster = BenchmarkCluster.start(type, Boolean.parseBoolean(option("persistence", "false")), nodes, extraYaml, cacheYaml);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            Cache<String, byte[]> first = cluster.cache(0);
+            for (int i = 0; i < keys; i++) {
+                first.put(key(i), value);
+            }
+            List<Cache<String, byte[]>> caches = new ArrayList<>();
+            for (int i = 0; i < cluster.size(); i++) {
+                caches.add(cluster.cache(i));
+            }
+            targets = caches;
+            receivedBytes();
+
+            System.out.println(format("%d %s nodes, %d threads, %.0f%% writes over %d keys of %d bytes",
+                    nodes, type, threads, writeRatio * 100, keys, value.length));
+            beginPhase("steady");
+            second.set(new Window("second"));
+            for (int i = 0; i < threads; i++) {
+                workers.execute(this::generateLoad);
+            }
+            reporter.scheduleAtFixedRate(this::reportSecond, 1, 1, TimeUnit.SECONDS);
+            Thread.sleep(settleMillis);
+
+            for (int cycle = 0; cycle < cycles; cycle++) {
+                join(nodes);
+                beginPhase("after join");
+                Thread.sleep(settleMillis);
+                leave(nodes);
+                beginPhase("after leave");
+                Thread.sleep(settleMillis);
+            }
+        } finally {
+            running = false;
+            endPhase();
+            reporter.shutdownNow();
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.SECONDS);
+            cluster.close();
+            summarise();
+        }
+    }
+
+    private void join(int index) throws Exception {
+        beginPhase("join node " + index);
+        long start = System.nanoTime();
+        InfinispanCacheManager node = cluster.startNode(index);
+        long started = System.nanoTime();
+        awaitRebalance();
+        long rebalanced = System.nanoTime();
+        List<Cache<String, byte[]>> caches = new ArrayList<>(targets);
+        caches.add(node.getCache(BenchmarkCluster.CACHE_NAME));
+        targets = caches;
+        Window window = phase.get();
+        window.bytes += receivedBytes() - window.bytesAtStart;
+        rebalances.add(format("join node %d: started in %dms, state transfer complete in %dms, %s received, p99 %.1fx steady",
+                index, millis(started - start), millis(rebalanced - start), megabytes(window.bytes), spike(window)));
+    }
+
+    private void leave(int index) throws Exception {
+        beginPhase("leave node " + index);
+        InfinispanCacheManager node = cluster.node(cluster.size() - 1);
+        List<Cache<String, byte[]>> caches = new ArrayList<>(targets);
+        caches.remove(cluster.<String, byte[]>cache(cluster.size() - 1));
+        targets = caches;
+        // let operations already sent to the node finish before it goes
+        Thread.sleep(LEAVE_GRACE_MILLIS);
+        long start = System.nanoTime();
+        receivedBytes();
+        cluster.stopNode(node);
+        receivedBytesSeen.remove(node);
+        awaitRebalance();
+        long rebalanced = System.nanoTime();
+        Window window = phase.get();
+        window.bytes += receivedBytes() - window.bytesAtStart;
+        rebalances.add(format("leave node %d: state transfer complete in %dms, %s received, p99 %.1fx steady",
+                index, millis(rebalanced - start), megabytes(window.bytes), spike(window)));
+    }
+
+    private void awaitRebalance() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + REBALANCE_TIMEOUT_MILLIS;
+        cluster.awaitMembers(cluster.size());
+        while (rebalancing()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException(format("State transfer did not finish within %dms", REBALANCE_TIMEOUT_MILLIS));
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private boolean rebalancing() {
+        for (int i = 0; i < cluster.size(); i++) {
+            StateTransferManager stateTransfer = cluster.cache(i).getAdvancedCache().getComponentRegistry().getStateTransferManager();
+            if (stateTransfer.isStateTransferInProgress() || stateTransfer.getCacheTopology().getMembers().size() != cluster.size()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void generateLoad() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running) {
+            List<Cache<String, byte[]>> current = targets;
+            Cache<String, byte[]> cache = current.get(random.nextInt(current.size()));
+            String key = key(random.nextInt(keys));
+            boolean write = random.nextDouble() < writeRatio;
+            long start = System.nanoTime();
+            try {
+                if (write) {
+                    cache.put(key, value);
+                } else {
+                    cache.get(key);
+                }
+            } catch (RuntimeException e) {
+                phase.get().errors.increment();
+                second.get().errors.increment();
+                continue;
+            }
+            long elapsed = System.nanoTime() - start;
+            phase.get().record(elapsed, write);
+            second.get().record(elapsed, write);
+        }
+    }
+
+    private void reportSecond() {
+        Window window = second.getAndSet(new Window("second"));
+        window.end();
+        Snapshot snapshot = window.latency.getSnapshot();
+        System.out.println(format("%-16s nodes=%d ops/s=%.0f writes/s=%.0f p99=%.3fms max=%.2fms errors=%d",
+                phase.get().name, targets.size(), window.rate(window.latency.getCount()), window.rate(window.writes.sum()),
+                snapshot.get99thPercentile() / 1e6, window.max.get() / 1e6, window.errors.sum()));
+    }
+
+    private synchronized void beginPhase(String name) {
+        endPhase();
+        Window window = new Window(name);
+        window.bytesAtStart = receivedBytes();
+        phases.add(window);
+        phase.set(window);
+    }
+
+    private synchronized void endPhase() {
+        Window window = phase.get();
+        if (window != null && window.endNanos == 0) {
+            window.end();
+            if (window.bytes == 0) {
+                window.bytes = receivedBytes() - window.bytesAtStart;
+            }
+        }
+    }
+
+    /**
+     * @return the bytes received by every node's channel so far, including nodes which have since stopped
+     */
+    private long receivedBytes() {
+        for (int i = 0; i < cluster.size(); i++) {
+            InfinispanCacheManager node = cluster.node(i);
+            JGroupsTransport transport = (JGroupsTransport) cluster.cache(i).getCacheManager().getTransport();
+            long received = ((JChannel) transport.getChannel()).getReceivedBytes();
+            Long seen = receivedBytesSeen.put(node, received);
+            receivedBytes += received - (seen == null ? 0 : seen);
+        }
+        return receivedBytes;
+    }
+
+    private void summarise() {
+        System.out.println();
+        System.out.println(format("%-16s %8s %10s %10s %8s %8s %8s %10s %8s",
+                "phase", "seconds", "ops/s", "writes/s", "p50 ms", "p99 ms", "max ms", "MB/s in", "errors"));
+        for (Window window : phases) {
+            Snapshot snapshot = window.latency.getSnapshot();
+            System.out.println(format("%-16s %8.1f %10.0f %10.0f %8.3f %8.3f %8.2f %10.2f %8d",
+                    window.name, window.seconds(), window.rate(window.latency.getCount()), window.rate(window.writes.sum()),
+                    snapshot.getMedian() / 1e6, snapshot.get99thPercentile() / 1e6, window.max.get() / 1e6,
+                    window.rate(window.bytes) / (1024 * 1024), window.errors.sum()));
+        }
+        System.out.println();
+        rebalances.forEach(System.out::println);
+    }
+
+    private double spike(Window window) {
+        double steady = phases.get(0).latency.getSnapshot().get99thPercentile();
+        return steady == 0 ? 0 : window.latency.getSnapshot().get99thPercentile() / steady;
+    }
+
+    private String option(String name, String defaultValue) {
+        return options.getOrDefault(name, defaultValue);
+    }
+
+    private static String key(int index) {
+        return "key-" + index;
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String megabytes(long bytes) {
+        return format("%.2fMB", bytes / (1024.0 * 1024));
+    }
+
+    /**
+     * Operations recorded over a phase of the run or a one second interval.
+     */
+    private static class Window {
+        private final String name;
+        private final Timer latency = new Timer(new UniformReservoir(100000));
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+        private final LongAdder writes = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final long startNanos = System.nanoTime();
+        private volatile long endNanos;
+        private long bytesAtStart;
+        private long bytes;
+
+        private Window(String name) {
+            this.name = name;
+        }
+
+        private void record(long nanos, boolean write) {
+            latency.update(nanos, TimeUnit.NANOSECONDS);
+            max.accumulate(nanos);
+            if (write) {
+                writes.increment();
+            }
+        }
+
+        private void end() {
+            endNanos = System.nanoTime();
+        }
+
+        private double seconds() {
+            return ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1e9;
+        }
+
+        private double rate(long count) {
+            double seconds = seconds();
+            return seconds == 0 ? 0 : count / seconds;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import org.infinispan.configuration.cache.CacheMode;
+
+public enum ClusteringMode {
+    local(CacheMode.LOCAL),
+    replicated(CacheMode.REPL_SYNC),
+    distributed(CacheMode.DIST_SYNC),
+    invalidation(CacheMode.INVALIDATION_SYNC);
+
+    private final CacheMode cacheMode;
+
+    ClusteringMode(CacheMode cacheMode) {
+        this.cacheMode = cacheMode;
+    }
+
+    public CacheMode toCacheMode(boolean asynchronous) {
+        return asynchronous ? cacheMode.toAsync() : cacheMode;
+    }
+}
@@ -0,0 +1,6 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+public enum CompressionCodec {
+    deflate,
+    gzip
+}
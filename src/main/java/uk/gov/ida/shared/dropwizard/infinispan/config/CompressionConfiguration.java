@@ -0,0 +1,50 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Size;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Compresses cached values whose marshalled form is at least {@code threshold} in size, so
+ * they are held, replicated and stored compressed and only expanded when read on this node.
+ */
+public class CompressionConfiguration {
+
+    @JsonProperty
+    @NotNull
+    private CompressionCodec codec = CompressionCodec.deflate;
+
+    @JsonProperty
+    @Min(1)
+    @Max(9)
+    private int level = 6;
+
+    @JsonProperty
+    @NotNull
+    private Size threshold = Size.kilobytes(4);
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private CompressionConfiguration() {
+    }
+
+    public CompressionConfiguration(CompressionCodec codec, int level, Size threshold) {
+        this.codec = codec;
+        this.level = level;
+        this.threshold = threshold;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public Size getThreshold() {
+        return threshold;
+    }
+}
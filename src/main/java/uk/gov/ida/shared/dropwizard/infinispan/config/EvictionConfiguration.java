@@ -0,0 +1,54 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionThreadPolicy;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Bounds the number of entries each node holds in memory for a cache.
+ */
+public class EvictionConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int maxEntries;
+
+    @JsonProperty
+    @NotNull
+    private EvictionStrategy strategy = EvictionStrategy.LRU;
+
+    @JsonProperty
+    @NotNull
+    private EvictionThreadPolicy threadPolicy = EvictionThreadPolicy.DEFAULT;
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private EvictionConfiguration() {
+    }
+
+    public EvictionConfiguration(int maxEntries, EvictionStrategy strategy, EvictionThreadPolicy threadPolicy) {
+        this.maxEntries = maxEntries;
+        this.strategy = strategy;
+        this.threadPolicy = threadPolicy;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public EvictionStrategy getStrategy() {
+        return strategy;
+    }
+
+    public EvictionThreadPolicy getThreadPolicy() {
+        return threadPolicy;
+    }
+
+    @ValidationMethod(message = "Infinispan Eviction Configuration is not valid - strategy must be LRU or LIRS")
+    public boolean isStrategyValid() {
+        return strategy == EvictionStrategy.LRU || strategy == EvictionStrategy.LIRS;
+    }
+}
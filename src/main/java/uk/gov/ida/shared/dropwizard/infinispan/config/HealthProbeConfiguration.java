@@ -0,0 +1,68 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Writes, reads and removes an entry in {@code cacheName} every {@code interval} and reports the
+ * node as unhealthy when the median or 99th percentile of the last {@code window} round trips
+ * is over its threshold.
+ */
+public class HealthProbeConfiguration {
+
+    @JsonProperty
+    @NotEmpty
+    private String cacheName = "healthProbe";
+
+    @JsonProperty
+    @NotNull
+    private Duration interval = Duration.seconds(10);
+
+    @JsonProperty
+    @Min(1)
+    private int window = 30;
+
+    @JsonProperty
+    @NotNull
+    private Duration p50Threshold = Duration.milliseconds(50);
+
+    @JsonProperty
+    @NotNull
+    private Duration p99Threshold = Duration.milliseconds(500);
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private HealthProbeConfiguration() {
+    }
+
+    public HealthProbeConfiguration(String cacheName, Duration interval, int window, Duration p50Threshold, Duration p99Threshold) {
+        this.cacheName = cacheName;
+        this.interval = interval;
+        this.window = window;
+        this.p50Threshold = p50Threshold;
+        this.p99Threshold = p99Threshold;
+    }
+
+    public String getCacheName() {
+        return cacheName;
+    }
+
+    public Duration getInterval() {
+        return interval;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public Duration getP50Threshold() {
+        return p50Threshold;
+    }
+
+    public Duration getP99Threshold() {
+        return p99Threshold;
+    }
+}
@@ -0,0 +1,72 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Samples {@code sampleRate} of the reads and writes issued on this node and reports the
+ * {@code topKeys} most frequently read and written keys of each cache over each {@code window}.
+ * Access counts are estimated in a {@code depth} by {@code width} table of counters per cache.
+ */
+public class HotKeysConfiguration {
+
+    @JsonProperty
+    @DecimalMin(value = "0", inclusive = false)
+    @DecimalMax("1")
+    private double sampleRate = 0.01;
+
+    @JsonProperty
+    @Min(1)
+    private int topKeys = 10;
+
+    @JsonProperty
+    @NotNull
+    private Duration window = Duration.minutes(1);
+
+    @JsonProperty
+    @Min(16)
+    private int width = 1024;
+
+    @JsonProperty
+    @Min(1)
+    @Max(16)
+    private int depth = 4;
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private HotKeysConfiguration() {
+    }
+
+    public HotKeysConfiguration(double sampleRate, int topKeys, Duration window, int width, int depth) {
+        this.sampleRate = sampleRate;
+        this.topKeys = topKeys;
+        this.window = window;
+        this.width = width;
+        this.depth = depth;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getTopKeys() {
+        return topKeys;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
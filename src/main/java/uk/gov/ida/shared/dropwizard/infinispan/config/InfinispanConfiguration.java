@@ -5,14 +5,22 @@ import com.google.common.base.Optional;
 import com.google.common.base.Strings;
 import io.dropwizard.util.Duration;
 import io.dropwizard.validation.ValidationMethod;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
 
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Configuration for an Infinispan embedded cache.
  * <p/>
- * Provides overrides for the jgroups.xml file in the resources section
+ * Provides the settings for the JGroups protocol stack used by clustered caches
  * Can either be 'clustered' or 'standalone' depending on the needs of the service
  */
 public class InfinispanConfiguration {
@@ -65,9 +73,18 @@ public class InfinispanConfiguration {
     @NotNull
     private CacheType type;
 
+    @JsonProperty
+    private Optional<String> cacheManagerName = Optional.absent();
+
     @JsonProperty
     private Optional<Duration> expiration = Optional.absent();
 
+    @JsonProperty
+    private Optional<Duration> maxIdle = Optional.absent();
+
+    @JsonProperty
+    private Optional<Duration> reaperInterval = Optional.absent();
+
     @JsonProperty
     @Valid
     private Optional<AuthConfiguration> authConfiguration = Optional.absent();
@@ -82,6 +99,21 @@ public class InfinispanConfiguration {
     @JsonProperty
     private Optional<String> persistenceFileLocation = Optional.absent();
 
+    @JsonProperty
+    @NotNull
+    private PersistenceStoreType persistenceStore = PersistenceStoreType.singleFile;
+
+    @JsonProperty
+    private boolean passivation = false;
+
+    @JsonProperty
+    @Valid
+    private Optional<PreloadConfiguration> preload = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<WriteBehindConfiguration> writeBehind = Optional.absent();
+
     @JsonProperty
     private boolean fetchInMemoryState = true;
 
@@ -91,6 +123,55 @@ public class InfinispanConfiguration {
     @JsonProperty
     private long stateTransferTimeout = 5;
 
+    @JsonProperty
+    @Valid
+    private Optional<EvictionConfiguration> eviction = Optional.absent();
+
+    @JsonProperty
+    private boolean asyncReplication = false;
+
+    @JsonProperty
+    @Valid
+    private Optional<ReplicationQueueConfiguration> replicationQueue = Optional.absent();
+
+    @JsonProperty
+    @NotNull
+    private List<String> externalizers = new ArrayList<>();
+
+    @JsonProperty
+    private boolean operationTimers = false;
+
+    @JsonProperty
+    @Valid
+    private Optional<RefreshAheadConfiguration> refreshAhead = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private TransportConfiguration transport = new TransportConfiguration();
+
+    @JsonProperty
+    @Valid
+    private Optional<HealthProbeConfiguration> healthProbe = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<CompressionConfiguration> compression = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<HotKeysConfiguration> hotKeys = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private Map<String, NamedCacheConfiguration> caches = new HashMap<>();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private Map<String, InfinispanConfiguration> cacheManagers = new HashMap<>();
+
     public String getBindAddress() {
         return bindAddress.or("[no bind address provided]");
     }
@@ -111,10 +192,22 @@ public class InfinispanConfiguration {
         return type;
     }
 
+    public Optional<String> getCacheManagerName() {
+        return cacheManagerName;
+    }
+
     public Optional<Duration> getExpiration() {
         return expiration;
     }
 
+    public Optional<Duration> getMaxIdle() {
+        return maxIdle;
+    }
+
+    public Optional<Duration> getReaperInterval() {
+        return reaperInterval;
+    }
+
     public Optional<AuthConfiguration> getAuthConfiguration() {
         return authConfiguration;
     }
@@ -131,6 +224,22 @@ public class InfinispanConfiguration {
         return persistenceFileLocation;
     }
 
+    public PersistenceStoreType getPersistenceStore() {
+        return persistenceStore;
+    }
+
+    public boolean getPassivation() {
+        return passivation;
+    }
+
+    public Optional<PreloadConfiguration> getPreload() {
+        return preload;
+    }
+
+    public Optional<WriteBehindConfiguration> getWriteBehind() {
+        return writeBehind;
+    }
+
     @ValidationMethod(message = "Infinispan Configuration is not valid - check documentation")
     public boolean isValid() { // must start with an 'is' due to a daft JavaBeans convention (http://dropwizard.codahale.com/manual/core/#man-core-representations)
         switch (getType()) {
@@ -153,6 +262,40 @@ public class InfinispanConfiguration {
         return true;
     }
 
+    @ValidationMethod(message = "Infinispan Passivation Configuration is not valid - persistenceToFileEnabled must be set")
+    public boolean isPassivationValid() {
+        return !passivation || persistenceToFileEnabled.or(false);
+    }
+
+    @ValidationMethod(message = "Infinispan Write Behind Configuration is not valid - persistenceToFileEnabled must be set")
+    public boolean isWriteBehindValid() {
+        return !writeBehind.isPresent() || persistenceToFileEnabled.or(false);
+    }
+
+    @ValidationMethod(message = "Infinispan Preload Configuration is not valid - persistenceToFileEnabled must be set")
+    public boolean isPreloadValid() {
+        return !preload.isPresent() || persistenceToFileEnabled.or(false);
+    }
+
+    @ValidationMethod(message = "Infinispan Refresh Ahead Configuration is not valid - expiration must be set")
+    public boolean isRefreshAheadValid() {
+        return !refreshAhead.isPresent() || expiration.isPresent();
+    }
+
+    @ValidationMethod(message = "Infinispan Externalizers Configuration is not valid - each must name an AdvancedExternalizer class")
+    public boolean isExternalizersValid() {
+        for (String externalizer : externalizers) {
+            try {
+                if (!AdvancedExternalizer.class.isAssignableFrom(Class.forName(externalizer))) {
+                    return false;
+                }
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @ValidationMethod(message = "Infinispan Auth Configuration is not valid - check documentation")
     public boolean isAuthValid() {
         return getType() != CacheType.clustered || authConfiguration.isPresent();
@@ -162,6 +305,35 @@ public class InfinispanConfiguration {
     public boolean isEncryptValid() {
         return getType() != CacheType.clustered || encryptConfiguration.isPresent();
     }
+
+    @ValidationMethod(message = "Infinispan Caches Configuration is not valid - standalone caches can only use local mode")
+    public boolean isCachesValid() {
+        if (getType() != CacheType.standalone) {
+            return true;
+        }
+        return caches.values().stream()
+                .allMatch(cache -> cache.getMode().or(ClusteringMode.local) == ClusteringMode.local);
+    }
+
+    @ValidationMethod(message = "Infinispan Cache Managers Configuration is not valid - cache managers cannot have cache managers of their own")
+    public boolean isCacheManagersNestingValid() {
+        return cacheManagers.values().stream().allMatch(cacheManager -> cacheManager.getCacheManagers().isEmpty());
+    }
+
+    @ValidationMethod(message = "Infinispan Cache Managers Configuration is not valid - each clustered cache manager needs its own bind address and port")
+    public boolean isCacheManagersTransportValid() {
+        List<String> endpoints = Stream.concat(Stream.of(this), cacheManagers.values().stream())
+                .filter(cacheManager -> cacheManager.getType() != CacheType.standalone)
+                .map(cacheManager -> cacheManager.getBindAddress() + ":" + cacheManager.getPort())
+                .collect(Collectors.toList());
+        return endpoints.size() == new HashSet<>(endpoints).size();
+    }
+
+    @ValidationMethod(message = "Infinispan Replication Queue Configuration is not valid - asyncReplication must be enabled")
+    public boolean isReplicationQueueValid() {
+        return !replicationQueue.isPresent() || asyncReplication;
+    }
+
     private boolean check(Optional<String> optionalString) {
         return optionalString.isPresent() && !Strings.isNullOrEmpty(optionalString.get());
     }
@@ -177,4 +349,55 @@ public class InfinispanConfiguration {
     public long getStateTransferTimeout() {
         return stateTransferTimeout;
     }
+
+    public Optional<EvictionConfiguration> getEviction() {
+        return eviction;
+    }
+
+    public boolean getAsyncReplication() {
+        return asyncReplication;
+    }
+
+    public Optional<ReplicationQueueConfiguration> getReplicationQueue() {
+        return replicationQueue;
+    }
+
+    public List<String> getExternalizers() {
+        return externalizers;
+    }
+
+    public boolean getOperationTimers() {
+        return operationTimers;
+    }
+
+    public Optional<RefreshAheadConfiguration> getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public TransportConfiguration getTransport() {
+        return transport;
+    }
+
+    public Optional<HealthProbeConfiguration> getHealthProbe() {
+        return healthProbe;
+    }
+
+    public Optional<CompressionConfiguration> getCompression() {
+        return compression;
+    }
+
+    public Optional<HotKeysConfiguration> getHotKeys() {
+        return hotKeys;
+    }
+
+    public Map<String, NamedCacheConfiguration> getCaches() {
+        return caches;
+    }
+
+    /**
+     * @return further cache managers to run alongside this one, each with its own transport, by name
+     */
+    public Map<String, InfinispanConfiguration> getCacheManagers() {
+        return cacheManagers;
+    }
 }
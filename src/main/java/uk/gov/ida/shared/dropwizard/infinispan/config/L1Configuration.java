@@ -0,0 +1,40 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Keeps copies of entries read from other nodes of a distributed cache for {@code lifespan}.
+ * Owners invalidate the copies when the entry changes, by unicast to each requestor until
+ * more than {@code invalidationThreshold} nodes hold one and by multicast after that.
+ */
+public class L1Configuration {
+
+    @JsonProperty
+    @NotNull
+    private Duration lifespan = Duration.minutes(10);
+
+    @JsonProperty
+    @Min(-1)
+    private int invalidationThreshold = 0;
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private L1Configuration() {
+    }
+
+    public L1Configuration(Duration lifespan, int invalidationThreshold) {
+        this.lifespan = lifespan;
+        this.invalidationThreshold = invalidationThreshold;
+    }
+
+    public Duration getLifespan() {
+        return lifespan;
+    }
+
+    public int getInvalidationThreshold() {
+        return invalidationThreshold;
+    }
+}
@@ -0,0 +1,114 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Optional;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.Valid;
+
+/**
+ * Overrides applied on top of the default cache configuration for a single named cache.
+ * <p/>
+ * Any value left out is inherited from the default configuration built by the bundle.
+ */
+public class NamedCacheConfiguration {
+
+    @JsonProperty
+    private Optional<ClusteringMode> mode = Optional.absent();
+
+    @JsonProperty
+    private Optional<Integer> numOwners = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<EvictionConfiguration> eviction = Optional.absent();
+
+    @JsonProperty
+    private Optional<Boolean> operationTimers = Optional.absent();
+
+    @JsonProperty
+    private Optional<Duration> maxIdle = Optional.absent();
+
+    @JsonProperty
+    private Optional<Duration> reaperInterval = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<L1Configuration> l1 = Optional.absent();
+
+    @JsonProperty
+    @Valid
+    private Optional<NearCacheConfiguration> nearCache = Optional.absent();
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private NamedCacheConfiguration() {
+    }
+
+    public NamedCacheConfiguration(Optional<ClusteringMode> mode, Optional<Integer> numOwners, Optional<EvictionConfiguration> eviction) {
+        this(mode, numOwners, eviction, Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent());
+    }
+
+    public NamedCacheConfiguration(Optional<ClusteringMode> mode, Optional<Integer> numOwners, Optional<EvictionConfiguration> eviction, Optional<Boolean> operationTimers,
+                                   Optional<Duration> maxIdle, Optional<Duration> reaperInterval, Optional<L1Configuration> l1, Optional<NearCacheConfiguration> nearCache) {
+        this.mode = mode;
+        this.numOwners = numOwners;
+        this.eviction = eviction;
+        this.operationTimers = operationTimers;
+        this.maxIdle = maxIdle;
+        this.reaperInterval = reaperInterval;
+        this.l1 = l1;
+        this.nearCache = nearCache;
+    }
+
+    public Optional<ClusteringMode> getMode() {
+        return mode;
+    }
+
+    public Optional<Integer> getNumOwners() {
+        return numOwners;
+    }
+
+    public Optional<EvictionConfiguration> getEviction() {
+        return eviction;
+    }
+
+    public Optional<Boolean> getOperationTimers() {
+        return operationTimers;
+    }
+
+    public Optional<Duration> getMaxIdle() {
+        return maxIdle;
+    }
+
+    public Optional<Duration> getReaperInterval() {
+        return reaperInterval;
+    }
+
+    public Optional<L1Configuration> getL1() {
+        return l1;
+    }
+
+    public Optional<NearCacheConfiguration> getNearCache() {
+        return nearCache;
+    }
+
+    @ValidationMethod(message = "numOwners must be positive and can only be set for distributed caches")
+    public boolean isNumOwnersValid() {
+        if (!numOwners.isPresent()) {
+            return true;
+        }
+        return numOwners.get() > 0 && mode.isPresent() && mode.get() == ClusteringMode.distributed;
+    }
+
+    @ValidationMethod(message = "l1 can only be set for distributed caches")
+    public boolean isL1Valid() {
+        return !l1.isPresent() || (mode.isPresent() && mode.get() == ClusteringMode.distributed);
+    }
+
+    // the near cache's invalidation listener is a cluster listener, which Infinispan refuses on invalidation caches
+    @ValidationMethod(message = "nearCache cannot be used with invalidation caches")
+    public boolean isNearCacheValid() {
+        return !nearCache.isPresent() || !mode.isPresent() || mode.get() != ClusteringMode.invalidation;
+    }
+}
@@ -0,0 +1,40 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Holds up to {@code maxEntries} recently read values on the heap in front of a cache.
+ * Values are dropped when the cache reports the entry changed, and after {@code lifespan}
+ * at the latest.
+ */
+public class NearCacheConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int maxEntries = 1000;
+
+    @JsonProperty
+    @NotNull
+    private Duration lifespan = Duration.minutes(1);
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private NearCacheConfiguration() {
+    }
+
+    public NearCacheConfiguration(int maxEntries, Duration lifespan) {
+        this.maxEntries = maxEntries;
+        this.lifespan = lifespan;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public Duration getLifespan() {
+        return lifespan;
+    }
+}
@@ -0,0 +1,39 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the persisted entries of the listed caches back into memory when the node starts.
+ */
+public class PreloadConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int threadPoolSize = 4;
+
+    @JsonProperty
+    @NotNull
+    private List<String> cacheNames = new ArrayList<>();
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private PreloadConfiguration() {
+    }
+
+    public PreloadConfiguration(int threadPoolSize, List<String> cacheNames) {
+        this.threadPoolSize = threadPoolSize;
+        this.cacheNames = cacheNames;
+    }
+
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    public List<String> getCacheNames() {
+        return cacheNames;
+    }
+}
@@ -0,0 +1,48 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Reloads entries read by a loading cache within {@code window} of their expiry, on a bounded
+ * pool of background threads, while the current value continues to be served.
+ */
+public class RefreshAheadConfiguration {
+
+    @JsonProperty
+    @NotNull
+    private Duration window = Duration.seconds(30);
+
+    @JsonProperty
+    @Min(1)
+    private int threadPoolSize = 2;
+
+    @JsonProperty
+    @Min(1)
+    private int queueSize = 100;
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private RefreshAheadConfiguration() {
+    }
+
+    public RefreshAheadConfiguration(Duration window, int threadPoolSize, int queueSize) {
+        this.window = window;
+        this.threadPoolSize = threadPoolSize;
+        this.queueSize = queueSize;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+}
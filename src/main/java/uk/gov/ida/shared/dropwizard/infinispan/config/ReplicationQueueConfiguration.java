@@ -0,0 +1,39 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Batches asynchronous replication messages, flushing once either
+ * {@code maxElements} commands are queued or {@code flushInterval} has elapsed.
+ */
+public class ReplicationQueueConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int maxElements = 1000;
+
+    @JsonProperty
+    @NotNull
+    private Duration flushInterval = Duration.milliseconds(10);
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private ReplicationQueueConfiguration() {
+    }
+
+    public ReplicationQueueConfiguration(int maxElements, Duration flushInterval) {
+        this.maxElements = maxElements;
+        this.flushInterval = flushInterval;
+    }
+
+    public int getMaxElements() {
+        return maxElements;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+}
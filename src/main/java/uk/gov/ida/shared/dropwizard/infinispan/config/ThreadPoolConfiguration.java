@@ -0,0 +1,72 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * One of the JGroups transport's thread pools which handle incoming messages. When the queue is
+ * enabled, messages wait in it once {@code minThreads} are busy, and more threads are only
+ * started, up to {@code maxThreads}, when it is full.
+ */
+public class ThreadPoolConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int minThreads;
+
+    @JsonProperty
+    @Min(1)
+    private int maxThreads;
+
+    @JsonProperty
+    @NotNull
+    private Duration keepAliveTime;
+
+    @JsonProperty
+    private boolean queueEnabled;
+
+    @JsonProperty
+    @Min(1)
+    private int queueMaxSize;
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private ThreadPoolConfiguration() {
+    }
+
+    public ThreadPoolConfiguration(int minThreads, int maxThreads, Duration keepAliveTime, boolean queueEnabled, int queueMaxSize) {
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.keepAliveTime = keepAliveTime;
+        this.queueEnabled = queueEnabled;
+        this.queueMaxSize = queueMaxSize;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public Duration getKeepAliveTime() {
+        return keepAliveTime;
+    }
+
+    public boolean getQueueEnabled() {
+        return queueEnabled;
+    }
+
+    public int getQueueMaxSize() {
+        return queueMaxSize;
+    }
+
+    @ValidationMethod(message = "Thread Pool Configuration is not valid - maxThreads must be at least minThreads")
+    public boolean isThreadCountValid() {
+        return maxThreads >= minThreads;
+    }
+}
@@ -0,0 +1,119 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.ValidationMethod;
+
+import javax.validation.Valid;
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Tuning for the JGroups protocol stack used by clustered caches. Sizes are in bytes.
+ * <p/>
+ * Messages are bundled into batches of up to {@code maxBundleSize}, sent at the latest after
+ * {@code maxBundleTimeout}, and larger messages are fragmented into {@code fragSize} pieces.
+ * Flow control gives each sender {@code maxCredits} to spend before it has to wait for receivers
+ * to return credits, which they do once their balance falls below {@code minCredits}.
+ * The defaults are those of the stack the library has always used.
+ */
+public class TransportConfiguration {
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private ThreadPoolConfiguration threadPool = new ThreadPoolConfiguration(2, 30, Duration.minutes(1), true, 10000);
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private ThreadPoolConfiguration oobThreadPool = new ThreadPoolConfiguration(2, 30, Duration.minutes(1), true, 100);
+
+    @JsonProperty
+    @Min(1)
+    private int maxBundleSize = 64000;
+
+    @JsonProperty
+    @NotNull
+    private Duration maxBundleTimeout = Duration.milliseconds(30);
+
+    @JsonProperty
+    @Min(1)
+    private int recvBufSize = 20000000;
+
+    @JsonProperty
+    @Min(1)
+    private int sendBufSize = 640000;
+
+    @JsonProperty
+    @Min(1)
+    private long maxCredits = 200000;
+
+    @JsonProperty
+    @Min(1)
+    private long minCredits = 70000;
+
+    @JsonProperty
+    @DecimalMin("0")
+    @DecimalMax("1")
+    private double minThreshold = 0.2;
+
+    @JsonProperty
+    @Min(1)
+    private int fragSize = 60000;
+
+    public TransportConfiguration() {
+    }
+
+    public ThreadPoolConfiguration getThreadPool() {
+        return threadPool;
+    }
+
+    public ThreadPoolConfiguration getOobThreadPool() {
+        return oobThreadPool;
+    }
+
+    public int getMaxBundleSize() {
+        return maxBundleSize;
+    }
+
+    public Duration getMaxBundleTimeout() {
+        return maxBundleTimeout;
+    }
+
+    public int getRecvBufSize() {
+        return recvBufSize;
+    }
+
+    public int getSendBufSize() {
+        return sendBufSize;
+    }
+
+    public long getMaxCredits() {
+        return maxCredits;
+    }
+
+    public long getMinCredits() {
+        return minCredits;
+    }
+
+    public double getMinThreshold() {
+        return minThreshold;
+    }
+
+    public int getFragSize() {
+        return fragSize;
+    }
+
+    @ValidationMethod(message = "Transport Configuration is not valid - fragSize must be smaller than maxBundleSize")
+    public boolean isFragSizeValid() {
+        return fragSize < maxBundleSize;
+    }
+
+    @ValidationMethod(message = "Transport Configuration is not valid - minCredits must not be more than maxCredits")
+    public boolean isCreditsValid() {
+        return minCredits <= maxCredits;
+    }
+}
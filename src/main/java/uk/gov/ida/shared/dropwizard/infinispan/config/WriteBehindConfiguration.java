@@ -0,0 +1,48 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Queues modifications to the file store and applies them on background threads
+ * instead of blocking the caller until the write completes.
+ */
+public class WriteBehindConfiguration {
+
+    @JsonProperty
+    @Min(1)
+    private int modificationQueueSize = 1024;
+
+    @JsonProperty
+    @Min(1)
+    private int threadPoolSize = 1;
+
+    @JsonProperty
+    @NotNull
+    private Duration shutdownTimeout = Duration.seconds(25);
+
+    @SuppressWarnings("unused") // needed for JAXB
+    private WriteBehindConfiguration() {
+    }
+
+    public WriteBehindConfiguration(int modificationQueueSize, int threadPoolSize, Duration shutdownTimeout) {
+        this.modificationQueueSize = modificationQueueSize;
+        this.threadPoolSize = threadPoolSize;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    public int getModificationQueueSize() {
+        return modificationQueueSize;
+    }
+
+    public int getThreadPoolSize() {
+        return threadPoolSize;
+    }
+
+    public Duration getShutdownTimeout() {
+        return shutdownTimeout;
+    }
+}
@@ -1,10 +1,12 @@
 package uk.gov.ida.shared.dropwizard.infinispan.health;
 
 import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Optional;
 import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
 import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
 import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanServiceConfiguration;
 import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+import uk.gov.ida.shared.dropwizard.infinispan.util.PreloadProgress;
 
 import java.text.MessageFormat;
 
@@ -22,6 +24,12 @@ public class InfinispanHealthCheck extends HealthCheck {
 
     @Override
     protected Result check() {
+        Optional<PreloadProgress> preloadProgress = infinispanCacheManager.getPreloadProgress();
+        if (preloadProgress.isPresent() && !preloadProgress.get().isComplete()) {
+            return Result.unhealthy(MessageFormat.format("Infinispan is warming: {0} entries loaded in {1}ms",
+                    preloadProgress.get().getEntriesLoaded(), preloadProgress.get().getElapsedMillis()));
+        }
+
         InfinispanConfiguration infinispanConfiguration = configuration.getInfinispan();
         if (infinispanConfiguration.getType() == CacheType.standalone) {
             return Result.healthy();
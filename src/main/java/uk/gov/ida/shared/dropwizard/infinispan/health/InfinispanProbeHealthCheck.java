@@ -0,0 +1,104 @@
+package uk.gov.ida.shared.dropwizard.infinispan.health;
+
+import com.codahale.metrics.SlidingWindowReservoir;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import org.infinispan.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HealthProbeConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+
+import java.text.MessageFormat;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports whether a write, read and remove round trip through a probe cache is fast enough.
+ * <p/>
+ * The probe runs on a background thread and its last result is returned to each health check
+ * poll, so polling costs nothing. Each node uses its own key, so in a clustered cache the round
+ * trip includes replicating the write and the remove to the other nodes. The probe cache has none
+ * of the default cache configuration's persistence, compression or instrumentation.
+ */
+public class InfinispanProbeHealthCheck extends HealthCheck implements Managed {
+    private static final Logger LOG = LoggerFactory.getLogger(InfinispanProbeHealthCheck.class);
+    private static final int INTERVALS_BEFORE_STALE = 3;
+
+    private final InfinispanCacheManager infinispanCacheManager;
+    private final HealthProbeConfiguration configuration;
+    private final Timer roundTrips;
+    private final String key = "probe-" + UUID.randomUUID();
+    private ScheduledExecutorService scheduler;
+    private volatile Result lastResult = Result.unhealthy("Infinispan has not been probed yet");
+    private volatile long lastProbeMillis;
+
+    public InfinispanProbeHealthCheck(InfinispanCacheManager infinispanCacheManager, HealthProbeConfiguration configuration) {
+        this.infinispanCacheManager = infinispanCacheManager;
+        this.configuration = configuration;
+        this.roundTrips = new Timer(new SlidingWindowReservoir(configuration.getWindow()));
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("infinispan-health-probe-%d").setDaemon(true).build());
+        long interval = configuration.getInterval().toMilliseconds();
+        scheduler.scheduleWithFixedDelay(this::probe, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    protected Result check() {
+        long sinceLastProbe = System.currentTimeMillis() - lastProbeMillis;
+        if (lastProbeMillis > 0 && sinceLastProbe > INTERVALS_BEFORE_STALE * configuration.getInterval().toMilliseconds()) {
+            return Result.unhealthy(MessageFormat.format("Infinispan probe has not completed for {0}ms", sinceLastProbe));
+        }
+        return lastResult;
+    }
+
+    void probe() {
+        try {
+            Cache<String, String> cache = infinispanCacheManager.getProbeCache(configuration.getCacheName());
+            String value = String.valueOf(System.nanoTime());
+            long start = System.nanoTime();
+            cache.put(key, value);
+            String read = cache.get(key);
+            cache.remove(key);
+            roundTrips.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+            lastResult = value.equals(read) ? latencyResult() : Result.unhealthy("Infinispan probe read back a different value to the one it wrote");
+        } catch (RuntimeException e) {
+            LOG.warn("Infinispan probe failed", e);
+            lastResult = Result.unhealthy(e);
+        }
+        lastProbeMillis = System.currentTimeMillis();
+    }
+
+    private Result latencyResult() {
+        Snapshot snapshot = roundTrips.getSnapshot();
+        double p50 = snapshot.getMedian();
+        double p99 = snapshot.get99thPercentile();
+        String latency = String.format("Probe round trip p50 %.2fms, p99 %.2fms over %d probes", toMillis(p50), toMillis(p99), snapshot.size());
+        if (p50 > configuration.getP50Threshold().toNanoseconds()) {
+            return Result.unhealthy(MessageFormat.format("{0}: p50 is over {1}", latency, configuration.getP50Threshold()));
+        }
+        if (p99 > configuration.getP99Threshold().toNanoseconds()) {
+            return Result.unhealthy(MessageFormat.format("{0}: p99 is over {1}", latency, configuration.getP99Threshold()));
+        }
+        return Result.healthy(latency);
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,45 @@
+package uk.gov.ida.shared.dropwizard.infinispan.marshalling;
+
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionCodec;
+
+import java.util.Arrays;
+
+/**
+ * A cached value held as its compressed marshalled form. Values are compared by their
+ * compressed bytes, which lets conditional operations match stored values.
+ */
+public class CompressedValue {
+
+    private final CompressionCodec codec;
+    private final byte[] bytes;
+
+    public CompressedValue(CompressionCodec codec, byte[] bytes) {
+        this.codec = codec;
+        this.bytes = bytes;
+    }
+
+    public CompressionCodec getCodec() {
+        return codec;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompressedValue)) {
+            return false;
+        }
+        CompressedValue that = (CompressedValue) o;
+        return codec == that.codec && Arrays.equals(bytes, that.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * codec.hashCode() + Arrays.hashCode(bytes);
+    }
+}
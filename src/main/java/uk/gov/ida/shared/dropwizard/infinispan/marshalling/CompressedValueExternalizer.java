@@ -0,0 +1,45 @@
+package uk.gov.ida.shared.dropwizard.infinispan.marshalling;
+
+import org.infinispan.commons.marshall.AbstractExternalizer;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionCodec;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Writes a {@link CompressedValue} as its codec and compressed bytes. It is registered
+ * automatically when compression is configured.
+ */
+public class CompressedValueExternalizer extends AbstractExternalizer<CompressedValue> {
+
+    private static final long serialVersionUID = 1L;
+    public static final int ID = 7302;
+
+    @Override
+    public Set<Class<? extends CompressedValue>> getTypeClasses() {
+        return Collections.singleton(CompressedValue.class);
+    }
+
+    @Override
+    public Integer getId() {
+        return ID;
+    }
+
+    @Override
+    public void writeObject(ObjectOutput output, CompressedValue value) throws IOException {
+        output.writeByte(value.getCodec().ordinal());
+        output.writeInt(value.getBytes().length);
+        output.write(value.getBytes());
+    }
+
+    @Override
+    public CompressedValue readObject(ObjectInput input) throws IOException {
+        CompressionCodec codec = CompressionCodec.values()[input.readUnsignedByte()];
+        byte[] bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new CompressedValue(codec, bytes);
+    }
+}
@@ -0,0 +1,40 @@
+package uk.gov.ida.shared.dropwizard.infinispan.marshalling;
+
+import org.infinispan.commons.marshall.AbstractExternalizer;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Writes an {@link Instant} as epoch seconds and nanoseconds instead of falling back to Java serialization.
+ */
+public class InstantExternalizer extends AbstractExternalizer<Instant> {
+
+    private static final long serialVersionUID = 1L;
+    public static final int ID = 7301;
+
+    @Override
+    public Set<Class<? extends Instant>> getTypeClasses() {
+        return Collections.singleton(Instant.class);
+    }
+
+    @Override
+    public Integer getId() {
+        return ID;
+    }
+
+    @Override
+    public void writeObject(ObjectOutput output, Instant instant) throws IOException {
+        output.writeLong(instant.getEpochSecond());
+        output.writeInt(instant.getNano());
+    }
+
+    @Override
+    public Instant readObject(ObjectInput input) throws IOException {
+        return Instant.ofEpochSecond(input.readLong(), input.readInt());
+    }
+}
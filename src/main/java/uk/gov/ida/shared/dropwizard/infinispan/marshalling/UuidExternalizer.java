@@ -0,0 +1,40 @@
+package uk.gov.ida.shared.dropwizard.infinispan.marshalling;
+
+import org.infinispan.commons.marshall.AbstractExternalizer;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Writes a {@link UUID} as its two longs instead of falling back to Java serialization.
+ */
+public class UuidExternalizer extends AbstractExternalizer<UUID> {
+
+    private static final long serialVersionUID = 1L;
+    public static final int ID = 7300;
+
+    @Override
+    public Set<Class<? extends UUID>> getTypeClasses() {
+        return Collections.singleton(UUID.class);
+    }
+
+    @Override
+    public Integer getId() {
+        return ID;
+    }
+
+    @Override
+    public void writeObject(ObjectOutput output, UUID uuid) throws IOException {
+        output.writeLong(uuid.getMostSignificantBits());
+        output.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    @Override
+    public UUID readObject(ObjectInput input) throws IOException {
+        return new UUID(input.readLong(), input.readLong());
+    }
+}
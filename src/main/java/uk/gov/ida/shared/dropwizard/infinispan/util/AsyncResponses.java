@@ -0,0 +1,30 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Resumes a suspended Jersey request once a cache operation completes, e.g.
+ * <code>
+ * \@GET
+ * public void get(\@PathParam("id") String id, \@Suspended AsyncResponse asyncResponse) {
+ *     AsyncResponses.resume(asyncResponse, nonBlockingCache.get(id));
+ * }
+ * </code>
+ */
+public final class AsyncResponses {
+
+    private AsyncResponses() {
+    }
+
+    public static void resume(AsyncResponse asyncResponse, CompletionStage<?> completionStage) {
+        completionStage.whenComplete((result, failure) -> {
+            if (failure == null) {
+                asyncResponse.resume(result);
+            } else {
+                asyncResponse.resume(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+            }
+        });
+    }
+}
@@ -0,0 +1,103 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import org.infinispan.Cache;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.remoting.transport.Address;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static uk.gov.ida.shared.dropwizard.infinispan.util.NotifyingFutures.toCompletableFuture;
+
+/**
+ * Multi-key reads and writes against a single cache.
+ * <p/>
+ * Keys held on this node are read inline; the rest are fetched with pipelined asynchronous
+ * gets so a batch costs roughly one round trip rather than one per key. Writes to a
+ * distributed cache are split by primary owner and sent as one putAll per owner.
+ */
+public class BulkCache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final Histogram getBatchSizes;
+    private final Timer getLatency;
+    private final Histogram putBatchSizes;
+    private final Timer putLatency;
+
+    BulkCache(Cache<K, V> cache, Histogram getBatchSizes, Timer getLatency, Histogram putBatchSizes, Timer putLatency) {
+        this.cache = cache;
+        this.getBatchSizes = getBatchSizes;
+        this.getLatency = getLatency;
+        this.putBatchSizes = putBatchSizes;
+        this.putLatency = putLatency;
+    }
+
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    /**
+     * @return a future of the entries found, without entries for keys which are not cached
+     */
+    public CompletableFuture<Map<K, V>> getAll(Collection<? extends K> keys) {
+        getBatchSizes.update(keys.size());
+        Timer.Context timer = getLatency.time();
+        DistributionManager distributionManager = cache.getAdvancedCache().getDistributionManager();
+
+        Map<K, CompletableFuture<V>> pending = new HashMap<>(keys.size());
+        for (K key : keys) {
+            if (distributionManager == null || distributionManager.getLocality(key).isLocal()) {
+                pending.put(key, getLocal(key));
+            } else {
+                pending.put(key, toCompletableFuture(cache.getAsync(key)));
+            }
+        }
+
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[pending.size()]))
+                .thenApply(ignored -> {
+                    Map<K, V> found = new HashMap<>(pending.size());
+                    pending.forEach((key, value) -> {
+                        if (value.join() != null) {
+                            found.put(key, value.join());
+                        }
+                    });
+                    return found;
+                })
+                .whenComplete((result, failure) -> timer.stop());
+    }
+
+    // a failed read fails the batch's future rather than escaping getAll with its timer running
+    private CompletableFuture<V> getLocal(K key) {
+        CompletableFuture<V> value = new CompletableFuture<>();
+        try {
+            value.complete(cache.get(key));
+        } catch (RuntimeException e) {
+            value.completeExceptionally(e);
+        }
+        return value;
+    }
+
+    public CompletableFuture<Void> putAll(Map<? extends K, ? extends V> entries) {
+        putBatchSizes.update(entries.size());
+        Timer.Context timer = putLatency.time();
+        DistributionManager distributionManager = cache.getAdvancedCache().getDistributionManager();
+
+        CompletableFuture<Void> result;
+        if (distributionManager == null) {
+            result = toCompletableFuture(cache.putAllAsync(entries));
+        } else {
+            Map<Address, Map<K, V>> entriesByOwner = entries.entrySet().stream().collect(Collectors.groupingBy(
+                    entry -> distributionManager.getPrimaryLocation(entry.getKey()),
+                    Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+            result = CompletableFuture.allOf(entriesByOwner.values().stream()
+                    .map(ownedEntries -> toCompletableFuture(cache.putAllAsync(ownedEntries)))
+                    .toArray(CompletableFuture<?>[]::new));
+        }
+        return result.whenComplete((ignored, failure) -> timer.stop());
+    }
+}
@@ -0,0 +1,83 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.context.Flag;
+import org.infinispan.filter.KeyFilter;
+import org.infinispan.metadata.InternalMetadata;
+import org.infinispan.metadata.Metadata;
+import org.infinispan.metadata.impl.InternalMetadataImpl;
+import org.infinispan.persistence.manager.PersistenceManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+
+import static java.text.MessageFormat.format;
+
+/**
+ * Loads persisted entries back into memory on a background thread, reading each
+ * store with a pool of worker threads rather than Infinispan's single-threaded preload.
+ */
+class CachePreloader {
+    private static final Logger LOG = LoggerFactory.getLogger(CachePreloader.class);
+
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(daemonThreadFactory("infinispan-preload-%d"));
+    private final ExecutorService workers;
+    private final PreloadProgress progress = new PreloadProgress();
+
+    CachePreloader(int threadPoolSize) {
+        this.workers = Executors.newFixedThreadPool(threadPoolSize, daemonThreadFactory("infinispan-preload-worker-%d"));
+    }
+
+    PreloadProgress start(List<String> cacheNames, Function<String, Cache<Object, Object>> cacheStarter) {
+        coordinator.execute(() -> {
+            try {
+                for (String cacheName : cacheNames) {
+                    preload(cacheStarter.apply(cacheName));
+                }
+                LOG.info(format("Preloaded {0} entries in {1}ms", progress.getEntriesLoaded(), progress.getElapsedMillis()));
+            } catch (RuntimeException e) {
+                LOG.error("Preloading Infinispan caches failed, remaining entries will be loaded on access", e);
+            } finally {
+                progress.complete();
+                workers.shutdown();
+            }
+        });
+        coordinator.shutdown();
+        return progress;
+    }
+
+    void stop() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void preload(Cache<Object, Object> cache) {
+        AdvancedCache<Object, Object> localCache = cache.getAdvancedCache().withFlags(
+                Flag.CACHE_MODE_LOCAL, Flag.SKIP_OWNERSHIP_CHECK, Flag.IGNORE_RETURN_VALUES, Flag.SKIP_CACHE_STORE, Flag.SKIP_INDEXING);
+        PersistenceManager persistenceManager = cache.getAdvancedCache().getComponentRegistry().getComponent(PersistenceManager.class);
+        persistenceManager.processOnAllStores(workers, KeyFilter.LOAD_ALL_FILTER, (entry, taskContext) -> {
+            InternalMetadata internalMetadata = entry.getMetadata();
+            if (internalMetadata != null && internalMetadata.isExpired(System.currentTimeMillis())) {
+                return;
+            }
+            if (internalMetadata == null) {
+                localCache.put(entry.getKey(), entry.getValue());
+            } else {
+                Metadata metadata = internalMetadata instanceof InternalMetadataImpl ? ((InternalMetadataImpl) internalMetadata).actual() : internalMetadata;
+                localCache.put(entry.getKey(), entry.getValue(), metadata);
+            }
+            progress.entryLoaded();
+        }, true, true);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+}
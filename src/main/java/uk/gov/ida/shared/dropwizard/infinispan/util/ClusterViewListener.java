@@ -0,0 +1,46 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Optional;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachemanagerlistener.annotation.Merged;
+import org.infinispan.notifications.cachemanagerlistener.annotation.ViewChanged;
+import org.infinispan.notifications.cachemanagerlistener.event.MergeEvent;
+import org.infinispan.notifications.cachemanagerlistener.event.ViewChangedEvent;
+import org.infinispan.remoting.transport.Address;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TopologyEvent.Type.merge;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TopologyEvent.Type.viewChange;
+
+@Listener
+public class ClusterViewListener {
+
+    private final Meter viewChanges;
+    private final Meter merges;
+    private final TopologyHistory history;
+
+    ClusterViewListener(Meter viewChanges, Meter merges, TopologyHistory history) {
+        this.viewChanges = viewChanges;
+        this.merges = merges;
+        this.history = history;
+    }
+
+    @ViewChanged
+    public void onViewChanged(ViewChangedEvent event) {
+        viewChanges.mark();
+        history.add(new TopologyEvent(viewChange, Optional.absent(), event.getViewId(), names(event.getNewMembers()), Optional.absent(), Optional.absent()));
+    }
+
+    @Merged
+    public void onMerged(MergeEvent event) {
+        merges.mark();
+        history.add(new TopologyEvent(merge, Optional.absent(), event.getViewId(), names(event.getNewMembers()), Optional.absent(), Optional.absent()));
+    }
+
+    static List<String> names(List<Address> members) {
+        return members.stream().map(String::valueOf).collect(Collectors.toList());
+    }
+}
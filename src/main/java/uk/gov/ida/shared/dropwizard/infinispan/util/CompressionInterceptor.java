@@ -0,0 +1,244 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.codahale.metrics.Timer;
+import com.google.common.io.ByteStreams;
+import org.infinispan.commands.read.GetCacheEntryCommand;
+import org.infinispan.commands.read.GetKeyValueCommand;
+import org.infinispan.commands.write.PutKeyValueCommand;
+import org.infinispan.commands.write.PutMapCommand;
+import org.infinispan.commands.write.RemoveCommand;
+import org.infinispan.commands.write.ReplaceCommand;
+import org.infinispan.commons.marshall.StreamingMarshaller;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.interceptors.base.BaseCustomInterceptor;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionCodec;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.marshalling.CompressedValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Replaces values written on this node with a {@link CompressedValue} when their marshalled form
+ * reaches the threshold and compresses to something smaller, and expands them again in the results
+ * of reads and writes. Compressed values are what gets held in memory, replicated and stored.
+ * <p/>
+ * Commands received from other nodes are passed through untouched, as their values were compressed
+ * where they were issued. Listeners, and iteration over the cache's entries, see compressed values.
+ * Conditional writes compare the compressed expected value with the stored one byte for byte, so
+ * equal values only match if they marshal to the same bytes.
+ * <p/>
+ * The CPU time timers include marshalling, since values which are not replicated or stored would
+ * otherwise not be marshalled at all.
+ */
+class CompressionInterceptor extends BaseCustomInterceptor {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final CompressionCodec codec;
+    private final int level;
+    private final long threshold;
+    private final Counter uncompressedBytes;
+    private final Counter compressedBytes;
+    private final Timer compressCpuTime;
+    private final Timer decompressCpuTime;
+
+    private StreamingMarshaller marshaller;
+
+    /**
+     * @param metricName the name the metrics' names start with, for example {@code uk.gov.ida.infinispan.sessions}
+     */
+    CompressionInterceptor(CompressionConfiguration configuration, MetricRegistry registry, String metricName) {
+        this.codec = configuration.getCodec();
+        this.level = configuration.getLevel();
+        this.threshold = configuration.getThreshold().toBytes();
+        this.uncompressedBytes = registry.counter(MetricRegistry.name(metricName, "uncompressedBytes"));
+        this.compressedBytes = registry.counter(MetricRegistry.name(metricName, "compressedBytes"));
+        this.compressCpuTime = registry.timer(MetricRegistry.name(metricName, "compressCpuTime"));
+        this.decompressCpuTime = registry.timer(MetricRegistry.name(metricName, "decompressCpuTime"));
+        registry.register(MetricRegistry.name(metricName, "compressionRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(compressedBytes.getCount(), uncompressedBytes.getCount());
+            }
+        });
+    }
+
+    @Override
+    protected void start() {
+        marshaller = cache.getAdvancedCache().getComponentRegistry().getCacheMarshaller();
+    }
+
+    @Override
+    public Object visitGetKeyValueCommand(InvocationContext ctx, GetKeyValueCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        return decompress(invokeNextInterceptor(ctx, command));
+    }
+
+    @Override
+    public Object visitGetCacheEntryCommand(InvocationContext ctx, GetCacheEntryCommand command) throws Throwable {
+        Object entry = invokeNextInterceptor(ctx, command);
+        if (!ctx.isOriginLocal() || !(entry instanceof CacheEntry) || !(((CacheEntry) entry).getValue() instanceof CompressedValue)) {
+            return entry;
+        }
+        // the entry may be the one in the data container, so expand a copy
+        @SuppressWarnings("unchecked")
+        CacheEntry<Object, Object> copy = ((CacheEntry<Object, Object>) entry).clone();
+        copy.setValue(decompress(copy.getValue()));
+        return copy;
+    }
+
+    @Override
+    public Object visitPutKeyValueCommand(InvocationContext ctx, PutKeyValueCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        command.setValue(compress(command.getValue()));
+        return decompress(invokeNextInterceptor(ctx, command));
+    }
+
+    @Override
+    public Object visitReplaceCommand(InvocationContext ctx, ReplaceCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        if (command.getOldValue() != null) {
+            // compressing the expected value the same way lets it equal the stored one, as long
+            // as both marshal to the same bytes
+            command.setOldValue(compress(command.getOldValue()));
+        }
+        command.setNewValue(compress(command.getNewValue()));
+        return decompress(invokeNextInterceptor(ctx, command));
+    }
+
+    @Override
+    public Object visitRemoveCommand(InvocationContext ctx, RemoveCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        if (command.getValue() != null) {
+            command.setValue(compress(command.getValue()));
+        }
+        return decompress(invokeNextInterceptor(ctx, command));
+    }
+
+    @Override
+    public Object visitPutMapCommand(InvocationContext ctx, PutMapCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        Map<Object, Object> compressed = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : command.getMap().entrySet()) {
+            compressed.put(entry.getKey(), compress(entry.getValue()));
+        }
+        command.setMap(compressed);
+        Object previous = invokeNextInterceptor(ctx, command);
+        if (!(previous instanceof Map)) {
+            return previous;
+        }
+        Map<Object, Object> decompressed = new HashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) previous).entrySet()) {
+            decompressed.put(entry.getKey(), decompress(entry.getValue()));
+        }
+        return decompressed;
+    }
+
+    private Object compress(Object value) throws IOException, InterruptedException {
+        if (value == null || value instanceof CompressedValue) {
+            return value;
+        }
+        long start = cpuTime();
+        try {
+            byte[] marshalled = marshaller.objectToByteBuffer(value);
+            if (marshalled.length < threshold) {
+                return value;
+            }
+            byte[] compressed = compress(marshalled);
+            if (compressed.length >= marshalled.length) {
+                return value;
+            }
+            uncompressedBytes.inc(marshalled.length);
+            compressedBytes.inc(compressed.length);
+            return new CompressedValue(codec, compressed);
+        } finally {
+            compressCpuTime.update(cpuTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private byte[] compress(byte[] marshalled) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(marshalled.length / 2);
+        if (codec == CompressionCodec.gzip) {
+            try (OutputStream out = new LeveledGZIPOutputStream(bytes, level)) {
+                out.write(marshalled);
+            }
+        } else {
+            Deflater deflater = new Deflater(level);
+            try (OutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+                out.write(marshalled);
+            } finally {
+                deflater.end();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private Object decompress(Object value) throws IOException, ClassNotFoundException {
+        if (!(value instanceof CompressedValue)) {
+            return value;
+        }
+        CompressedValue compressed = (CompressedValue) value;
+        long start = cpuTime();
+        try {
+            ByteArrayInputStream bytes = new ByteArrayInputStream(compressed.getBytes());
+            byte[] marshalled;
+            if (compressed.getCodec() == CompressionCodec.gzip) {
+                try (InputStream in = new GZIPInputStream(bytes)) {
+                    marshalled = ByteStreams.toByteArray(in);
+                }
+            } else {
+                Inflater inflater = new Inflater();
+                try (InputStream in = new InflaterInputStream(bytes, inflater)) {
+                    marshalled = ByteStreams.toByteArray(in);
+                } finally {
+                    inflater.end();
+                }
+            }
+            return marshaller.objectFromByteBuffer(marshalled);
+        } finally {
+            decompressCpuTime.update(cpuTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static long cpuTime() {
+        return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * A {@link GZIPOutputStream} with a compression level, which it does not otherwise allow.
+     */
+    private static class LeveledGZIPOutputStream extends GZIPOutputStream {
+        LeveledGZIPOutputStream(OutputStream out, int level) throws IOException {
+            super(out);
+            def.setLevel(level);
+        }
+    }
+}
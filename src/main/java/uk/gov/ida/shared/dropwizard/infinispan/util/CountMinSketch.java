@@ -0,0 +1,49 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estimates how many times each key has been added in a fixed {@code depth} by {@code width}
+ * table of counters. Each row hashes the key to a different counter, and the estimate is the
+ * smallest of a key's counters, so it can over-count keys which share counters but never
+ * under-counts.
+ */
+class CountMinSketch {
+    private static final int ROW_SEED = 0x9E3779B9;
+
+    private final int depth;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = width;
+        this.counters = new AtomicLongArray(depth * width);
+    }
+
+    /**
+     * @return the estimated number of times the key has been added, including this time
+     */
+    long add(Object key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, counters.incrementAndGet(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    private int index(int hash, int row) {
+        return row * width + Math.floorMod(mix(hash + row * ROW_SEED), width);
+    }
+
+    // the MurmurHash3 finaliser, so that keys with similar hash codes spread across the row
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
@@ -0,0 +1,21 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Meter;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntriesEvicted;
+import org.infinispan.notifications.cachelistener.event.CacheEntriesEvictedEvent;
+
+@Listener
+public class EvictionMeterListener {
+
+    private final Meter evictionRate;
+
+    public EvictionMeterListener(Meter evictionRate) {
+        this.evictionRate = evictionRate;
+    }
+
+    @CacheEntriesEvicted
+    public void onEntriesEvicted(CacheEntriesEvictedEvent<?, ?> event) {
+        evictionRate.mark(event.getEntries().size());
+    }
+}
@@ -0,0 +1,44 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.infinispan.AdvancedCache;
+import org.infinispan.container.DataContainer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Purges expired entries from a cache's memory and stores, standing in for Infinispan's own
+ * reaper so each sweep can be timed.
+ * <p/>
+ * The purge count is the drop in the data container's size across the sweep, so writes made
+ * while the sweep runs can make it an undercount.
+ */
+class ExpirationReaper implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(ExpirationReaper.class);
+
+    private final AdvancedCache<?, ?> cache;
+    private final Timer sweepDuration;
+    private final Meter purgedEntries;
+
+    ExpirationReaper(AdvancedCache<?, ?> cache, Timer sweepDuration, Meter purgedEntries) {
+        this.cache = cache;
+        this.sweepDuration = sweepDuration;
+        this.purgedEntries = purgedEntries;
+    }
+
+    @Override
+    public void run() {
+        try {
+            DataContainer<?, ?> dataContainer = cache.getDataContainer();
+            int sizeBeforeSweep = dataContainer.size();
+            try (Timer.Context ignored = sweepDuration.time()) {
+                cache.getEvictionManager().processEviction();
+            }
+            purgedEntries.mark(Math.max(0, sizeBeforeSweep - dataContainer.size()));
+        } catch (RuntimeException e) {
+            // an exception would cancel the schedule, so log it and try again next time
+            LOG.warn("Purging expired entries from cache " + cache.getName() + " failed", e);
+        }
+    }
+}
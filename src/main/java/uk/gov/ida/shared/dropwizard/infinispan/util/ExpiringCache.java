@@ -0,0 +1,39 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import io.dropwizard.util.Duration;
+import org.infinispan.Cache;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes entries with their own lifespan and max idle time instead of the cache's defaults.
+ * An entry expires at whichever limit it reaches first.
+ */
+public class ExpiringCache<K, V> {
+
+    private final Cache<K, V> cache;
+
+    ExpiringCache(Cache<K, V> cache) {
+        this.cache = cache;
+    }
+
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    public V get(K key) {
+        return cache.get(key);
+    }
+
+    public V put(K key, V value, Duration lifespan, Duration maxIdle) {
+        return cache.put(key, value, lifespan.toMilliseconds(), TimeUnit.MILLISECONDS, maxIdle.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    public V putIfAbsent(K key, V value, Duration lifespan, Duration maxIdle) {
+        return cache.putIfAbsent(key, value, lifespan.toMilliseconds(), TimeUnit.MILLISECONDS, maxIdle.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    public V replace(K key, V value, Duration lifespan, Duration maxIdle) {
+        return cache.replace(key, value, lifespan.toMilliseconds(), TimeUnit.MILLISECONDS, maxIdle.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,74 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import org.infinispan.commands.read.GetCacheEntryCommand;
+import org.infinispan.commands.read.GetKeyValueCommand;
+import org.infinispan.commands.write.PutKeyValueCommand;
+import org.infinispan.commands.write.PutMapCommand;
+import org.infinispan.commands.write.RemoveCommand;
+import org.infinispan.commands.write.ReplaceCommand;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.interceptors.base.BaseCustomInterceptor;
+
+/**
+ * Passes the keys of every get, put, replace, remove and putAll issued on this node to a
+ * {@link HotKeySampler}. Commands received from other nodes are not sampled; they are already
+ * counted by the node which issued them.
+ */
+class HotKeyInterceptor extends BaseCustomInterceptor {
+
+    private final HotKeySampler sampler;
+
+    HotKeyInterceptor(HotKeySampler sampler) {
+        this.sampler = sampler;
+    }
+
+    @Override
+    public Object visitGetKeyValueCommand(InvocationContext ctx, GetKeyValueCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            sampler.sampleRead(command.getKey());
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+
+    @Override
+    public Object visitGetCacheEntryCommand(InvocationContext ctx, GetCacheEntryCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            sampler.sampleRead(command.getKey());
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+
+    @Override
+    public Object visitPutKeyValueCommand(InvocationContext ctx, PutKeyValueCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            sampler.sampleWrite(command.getKey());
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+
+    @Override
+    public Object visitReplaceCommand(InvocationContext ctx, ReplaceCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            sampler.sampleWrite(command.getKey());
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+
+    @Override
+    public Object visitRemoveCommand(InvocationContext ctx, RemoveCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            sampler.sampleWrite(command.getKey());
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+
+    @Override
+    public Object visitPutMapCommand(InvocationContext ctx, PutMapCommand command) throws Throwable {
+        if (ctx.isOriginLocal()) {
+            for (Object key : command.getMap().keySet()) {
+                sampler.sampleWrite(key);
+            }
+        }
+        return invokeNextInterceptor(ctx, command);
+    }
+}
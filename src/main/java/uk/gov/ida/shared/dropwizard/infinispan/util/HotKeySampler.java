@@ -0,0 +1,162 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.hash.Hashing;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Samples the reads and writes of one cache's keys and keeps the most frequently accessed ones.
+ * <p/>
+ * Each sampled access is counted in a {@link CountMinSketch}, and a key whose estimate beats the
+ * coolest of the top keys takes its place, so memory stays bounded however many distinct keys
+ * there are. Counts start again every window, and the last complete window is reported; until
+ * the first one completes, the window in progress is reported instead.
+ * <p/>
+ * Keys are reported as a truncated hash of their string form rather than the key itself, since
+ * keys can carry user data and the endpoint listing them is not authenticated.
+ */
+class HotKeySampler {
+
+    private final double sampleRate;
+    private final int topKeys;
+    private final int depth;
+    private final int width;
+    private final long windowNanos;
+    private final Ticker ticker;
+
+    private volatile Window current;
+    private volatile Optional<HotKeys> previous = Optional.absent();
+
+    HotKeySampler(HotKeysConfiguration configuration) {
+        this(configuration, Ticker.systemTicker());
+    }
+
+    HotKeySampler(HotKeysConfiguration configuration, Ticker ticker) {
+        this.sampleRate = configuration.getSampleRate();
+        this.topKeys = configuration.getTopKeys();
+        this.depth = configuration.getDepth();
+        this.width = configuration.getWidth();
+        this.windowNanos = configuration.getWindow().toNanoseconds();
+        this.ticker = ticker;
+        this.current = new Window(ticker.read());
+    }
+
+    void sampleRead(Object key) {
+        if (isSampled()) {
+            currentWindow().reads.add(key);
+        }
+    }
+
+    void sampleWrite(Object key) {
+        if (isSampled()) {
+            currentWindow().writes.add(key);
+        }
+    }
+
+    /**
+     * @return the first 16 hex digits of the SHA-256 of the key's string form, which is how it is reported
+     */
+    static String reportedKey(Object key) {
+        return Hashing.sha256().hashString(String.valueOf(key), StandardCharsets.UTF_8).toString().substring(0, 16);
+    }
+
+    HotKeys getHotKeys() {
+        Window window = currentWindow();
+        if (previous.isPresent()) {
+            return previous.get();
+        }
+        return window.snapshot(ticker.read() - window.startNanos);
+    }
+
+    private boolean isSampled() {
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private Window currentWindow() {
+        Window window = current;
+        long now = ticker.read();
+        return now - window.startNanos < windowNanos ? window : roll(now);
+    }
+
+    private synchronized Window roll(long now) {
+        Window window = current;
+        long elapsed = now - window.startNanos;
+        if (elapsed < windowNanos) {
+            // another thread got here first
+            return window;
+        }
+        // when the window ended over a window ago, the last complete window is an empty one after it
+        previous = Optional.of(elapsed < 2 * windowNanos ? window.snapshot(windowNanos) : new Window(now).snapshot(windowNanos));
+        current = new Window(now);
+        return current;
+    }
+
+    private class Window {
+        private final long startNanos;
+        private final TopKeys reads = new TopKeys();
+        private final TopKeys writes = new TopKeys();
+
+        Window(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        HotKeys snapshot(long elapsedNanos) {
+            double seconds = Math.max(elapsedNanos, 1L) / 1e9;
+            return new HotKeys(sampleRate, seconds, reads.hottest(seconds), writes.hottest(seconds));
+        }
+    }
+
+    private class TopKeys {
+        private final CountMinSketch sketch = new CountMinSketch(depth, width);
+        private final Map<Object, Long> counts = new HashMap<>();
+        private volatile long floor = 0;
+
+        void add(Object key) {
+            long estimate = sketch.add(key);
+            if (estimate <= floor) {
+                // cannot displace the coolest top key, and a top key's estimate is always above it
+                return;
+            }
+            synchronized (counts) {
+                if (!counts.containsKey(key) && counts.size() == topKeys) {
+                    Object coolest = coolest();
+                    if (estimate <= counts.get(coolest)) {
+                        return;
+                    }
+                    counts.remove(coolest);
+                }
+                counts.put(key, estimate);
+                if (counts.size() == topKeys) {
+                    floor = counts.get(coolest());
+                }
+            }
+        }
+
+        private Object coolest() {
+            return counts.entrySet().stream().min(Map.Entry.comparingByValue()).get().getKey();
+        }
+
+        List<HotKeys.HotKey> hottest(double seconds) {
+            Map<Object, Long> copy;
+            synchronized (counts) {
+                copy = new HashMap<>(counts);
+            }
+            return copy.entrySet().stream()
+                    .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                    .map(entry -> new HotKeys.HotKey(
+                            reportedKey(entry.getKey()),
+                            Math.round(entry.getValue() / sampleRate),
+                            entry.getValue() / sampleRate / seconds))
+                    .collect(Collectors.toList());
+        }
+    }
+}
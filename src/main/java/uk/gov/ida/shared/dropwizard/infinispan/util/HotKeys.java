@@ -0,0 +1,72 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import java.util.List;
+
+/**
+ * The most frequently read and written keys of a cache over one sampling window, hottest first,
+ * as listed on the hot keys endpoint.
+ */
+public class HotKeys {
+
+    private final double sampleRate;
+    private final double windowSeconds;
+    private final List<HotKey> reads;
+    private final List<HotKey> writes;
+
+    HotKeys(double sampleRate, double windowSeconds, List<HotKey> reads, List<HotKey> writes) {
+        this.sampleRate = sampleRate;
+        this.windowSeconds = windowSeconds;
+        this.reads = reads;
+        this.writes = writes;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * @return how long the keys were sampled for, which is shorter than the configured window until the first window completes
+     */
+    public double getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public List<HotKey> getReads() {
+        return reads;
+    }
+
+    public List<HotKey> getWrites() {
+        return writes;
+    }
+
+    public static class HotKey {
+
+        private final String key;
+        private final long count;
+        private final double perSecond;
+
+        HotKey(String key, long count, double perSecond) {
+            this.key = key;
+            this.count = count;
+            this.perSecond = perSecond;
+        }
+
+        /**
+         * @return a truncated hash of the key rather than the key itself, see {@link HotKeySampler#reportedKey(Object)}
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the estimated number of accesses in the window, scaled up from the sampled ones
+         */
+        public long getCount() {
+            return count;
+        }
+
+        public double getPerSecond() {
+            return perSecond;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import java.util.Collections;
+import java.util.Map;
+
+@Path("/infinispan/hotkeys")
+@Produces("application/json")
+public class HotKeysResource {
+
+    private final InfinispanCacheManager infinispanCacheManager;
+    private final Map<String, InfinispanCacheManager> namedCacheManagers;
+
+    public HotKeysResource(InfinispanCacheManager infinispanCacheManager) {
+        this(infinispanCacheManager, Collections.emptyMap());
+    }
+
+    public HotKeysResource(InfinispanCacheManager infinispanCacheManager, Map<String, InfinispanCacheManager> namedCacheManagers) {
+        this.infinispanCacheManager = infinispanCacheManager;
+        this.namedCacheManagers = namedCacheManagers;
+    }
+
+    @GET
+    public Map<String, HotKeys> getHotKeys() {
+        return infinispanCacheManager.getHotKeys();
+    }
+
+    @GET
+    @Path("{name}")
+    public Map<String, HotKeys> getNamedHotKeys(@PathParam("name") String name) {
+        InfinispanCacheManager cacheManager = namedCacheManagers.get(name);
+        if (cacheManager == null) {
+            throw new NotFoundException();
+        }
+        return cacheManager.getHotKeys();
+    }
+}
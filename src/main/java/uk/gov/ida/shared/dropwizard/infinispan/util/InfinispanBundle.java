@@ -2,24 +2,41 @@ package uk.gov.ida.shared.dropwizard.infinispan.util;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.dropwizard.util.Duration;
+import org.infinispan.commons.marshall.AdvancedExternalizer;
+import org.infinispan.configuration.cache.AbstractStoreConfigurationBuilder;
 import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.cache.PersistenceConfigurationBuilder;
 import org.infinispan.configuration.global.GlobalConfigurationBuilder;
 import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.persistence.leveldb.configuration.LevelDBStoreConfiguration;
+import org.infinispan.persistence.leveldb.configuration.LevelDBStoreConfigurationBuilder;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
 import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
 import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanServiceConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.PersistenceStoreType;
+import uk.gov.ida.shared.dropwizard.infinispan.config.ReplicationQueueConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.WriteBehindConfiguration;
 import uk.gov.ida.shared.dropwizard.infinispan.health.InfinispanHealthCheck;
+import uk.gov.ida.shared.dropwizard.infinispan.health.InfinispanProbeHealthCheck;
+import uk.gov.ida.shared.dropwizard.infinispan.marshalling.CompressedValueExternalizer;
 
 import javax.inject.Provider;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
+import static java.text.MessageFormat.format;
+
 /**
  * A {@link ConfiguredBundle} for integrating with Infinispan.
  * <p/>
@@ -68,11 +85,25 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
 
     private static final Logger LOG = LoggerFactory.getLogger(InfinispanBundle.class);
     private static final long INFINISPAN_CACHE_ENTRIES_NEVER_EXPIRE_MAGIC_VALUE = -1L;
+    private static final Duration DEFAULT_REAPER_INTERVAL = Duration.minutes(1);
 
+    private final Optional<String> name;
+    private final String metricPrefix;
     private InfinispanConfiguration infinispanConfiguration;
     private InfinispanCacheManager infinispanCacheManager;
+    private final Map<String, InfinispanCacheManager> namedCacheManagers = new LinkedHashMap<>();
 
     public InfinispanBundle() {
+        this.name = Optional.absent();
+        this.metricPrefix = InfinispanCacheManager.DEFAULT_METRIC_PREFIX;
+    }
+
+    /**
+     * Builds one of the further cache managers named under {@code cacheManagers}.
+     */
+    private InfinispanBundle(String name) {
+        this.name = Optional.of(name);
+        this.metricPrefix = MetricRegistry.name(InfinispanCacheManager.DEFAULT_METRIC_PREFIX, name);
     }
 
     @Override
@@ -81,28 +112,63 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
 
     @Override
     public void run(InfinispanServiceConfiguration configuration, Environment environment) {
-        infinispanConfiguration = configuration.getInfinispan();
-        if (infinispanConfiguration.getType() == CacheType.clustered) {
-            LOG.info("Running Infinispan as a clustered cache.");
-            infinispanCacheManager = configureClusteredCache(environment, infinispanConfiguration, environment.metrics());
-        } else if (infinispanConfiguration.getType() == CacheType.insecure) {
-            LOG.info("Running Infinispan as a insecure clustered cache.");
-            infinispanCacheManager = configureInsecureCache(environment, infinispanConfiguration, environment.metrics());
-        } else {
-            LOG.info("Running Infinispan as a standalone cache.");
-            infinispanCacheManager = configureStandaloneCache(environment, environment.metrics());
-        }
+        infinispanCacheManager = configureCacheManager(configuration.getInfinispan(), environment);
         environment.healthChecks().register("Infinispan Health Check", new InfinispanHealthCheck(configuration, infinispanCacheManager));
+        addHealthProbe("Infinispan Probe Health Check", infinispanConfiguration, infinispanCacheManager, environment);
+
+        for (Map.Entry<String, InfinispanConfiguration> namedConfiguration : infinispanConfiguration.getCacheManagers().entrySet()) {
+            String name = namedConfiguration.getKey();
+            InfinispanCacheManager cacheManager = new InfinispanBundle(name).configureCacheManager(namedConfiguration.getValue(), environment);
+            namedCacheManagers.put(name, cacheManager);
+            environment.healthChecks().register("Infinispan Health Check " + name, new InfinispanHealthCheck(namedConfiguration::getValue, cacheManager));
+            addHealthProbe("Infinispan Probe Health Check " + name, namedConfiguration.getValue(), cacheManager, environment);
+        }
 
-        environment.jersey().register(new InfinispanDetailsResource(infinispanCacheManager, infinispanConfiguration));
+        environment.jersey().register(new InfinispanDetailsResource(infinispanCacheManager, infinispanConfiguration, namedCacheManagers));
+        if (isHotKeysConfigured()) {
+            environment.jersey().register(new HotKeysResource(infinispanCacheManager, namedCacheManagers));
+        }
+    }
 
+    private boolean isHotKeysConfigured() {
+        return infinispanConfiguration.getHotKeys().isPresent() ||
+                infinispanConfiguration.getCacheManagers().values().stream().anyMatch(configuration -> configuration.getHotKeys().isPresent());
+    }
 
+    private static void addHealthProbe(String healthCheckName, InfinispanConfiguration configuration, InfinispanCacheManager cacheManager, Environment environment) {
+        if (configuration.getHealthProbe().isPresent()) {
+            InfinispanProbeHealthCheck probe = new InfinispanProbeHealthCheck(cacheManager, configuration.getHealthProbe().get());
+            // managed after the cache manager, so it is started once the cache manager is
+            environment.lifecycle().manage(probe);
+            environment.healthChecks().register(healthCheckName, probe);
+        }
     }
 
     public Provider<InfinispanCacheManager> getInfinispanCacheManagerProvider() {
         return () -> infinispanCacheManager;
     }
 
+    /**
+     * @return a provider of the cache manager configured as {@code name} under {@code cacheManagers}
+     */
+    public Provider<InfinispanCacheManager> getInfinispanCacheManagerProvider(String name) {
+        return () -> getCacheManager(name);
+    }
+
+    private InfinispanCacheManager configureCacheManager(InfinispanConfiguration configuration, Environment environment) {
+        infinispanConfiguration = configuration;
+        if (infinispanConfiguration.getType() == CacheType.clustered) {
+            LOG.info("Running Infinispan as a clustered cache.");
+            return configureClusteredCache(environment, infinispanConfiguration, environment.metrics());
+        } else if (infinispanConfiguration.getType() == CacheType.insecure) {
+            LOG.info("Running Infinispan as a insecure clustered cache.");
+            return configureInsecureCache(environment, infinispanConfiguration, environment.metrics());
+        } else {
+            LOG.info("Running Infinispan as a standalone cache.");
+            return configureStandaloneCache(environment, environment.metrics());
+        }
+    }
+
     private InfinispanCacheManager configureStandaloneCache(Environment environment, MetricRegistry metrics) {
 
         InfinispanCacheManager cacheManager;
@@ -120,24 +186,6 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
     }
 
     private InfinispanCacheManager configureClusteredCache(Environment environment, InfinispanConfiguration infinispanConfiguration, MetricRegistry metrics) {
-        // check for null first?
-        System.setProperty("jgroups.tcp.address", infinispanConfiguration.getBindAddress());
-        System.setProperty("jgroups.tcp.port", String.valueOf(infinispanConfiguration.getPort()));
-        System.setProperty("jgroups.tcpping.initial_hosts", infinispanConfiguration.getInitialHosts());
-        if (infinispanConfiguration.getEncryptConfiguration() != null && infinispanConfiguration.getEncryptConfiguration().isPresent()) {
-            System.setProperty("jgroups.encrypt.key_store_name", infinispanConfiguration.getEncryptConfiguration().get().getKeyStoreName());
-            System.setProperty("jgroups.encrypt.store_password", infinispanConfiguration.getEncryptConfiguration().get().getKeyStorePassword());
-            System.setProperty("jgroups.encrypt.alias", infinispanConfiguration.getEncryptConfiguration().get().getEncryptionKeyAlias());
-        }
-        if (infinispanConfiguration.getAuthConfiguration() != null && infinispanConfiguration.getAuthConfiguration().isPresent()) {
-            System.setProperty("jgroups.auth.auth_value", infinispanConfiguration.getAuthConfiguration().get().getAuthValue());
-            System.setProperty("jgroups.auth.keystore_path", infinispanConfiguration.getAuthConfiguration().get().getKeyStorePath());
-            System.setProperty("jgroups.auth.keystore_password", infinispanConfiguration.getAuthConfiguration().get().getKeyStorePassword());
-            System.setProperty("jgroups.auth.keystore_type", infinispanConfiguration.getAuthConfiguration().get().getKeyStoreType());
-            System.setProperty("jgroups.auth.cert_alias", infinispanConfiguration.getAuthConfiguration().get().getCertAlias());
-            System.setProperty("jgroups.auth.cipher_type", infinispanConfiguration.getAuthConfiguration().get().getCipherType());
-        }
-
         InfinispanCacheManager cacheManager;
 
         if (infinispanConfiguration.getPersistenceToFileEnabled() != null &&
@@ -152,11 +200,6 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
     }
 
     private InfinispanCacheManager configureInsecureCache(Environment environment, InfinispanConfiguration infinispanConfiguration, MetricRegistry metrics) {
-        // check for null first?
-        System.setProperty("jgroups.tcp.address", infinispanConfiguration.getBindAddress());
-        System.setProperty("jgroups.tcp.port", String.valueOf(infinispanConfiguration.getPort()));
-        System.setProperty("jgroups.tcpping.initial_hosts", infinispanConfiguration.getInitialHosts());
-
         InfinispanCacheManager cacheManager;
 
         if (infinispanConfiguration.getPersistenceToFileEnabled() != null &&
@@ -175,6 +218,14 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
         return infinispanCacheManager;
     }
 
+    public InfinispanCacheManager getCacheManager(String name) {
+        InfinispanCacheManager cacheManager = namedCacheManagers.get(name);
+        if (cacheManager == null) {
+            throw new IllegalArgumentException(format("No Infinispan cache manager is configured as {0}", name));
+        }
+        return cacheManager;
+    }
+
     public void enableJMX(ConfigurationBuilder configurationBuilder) {
         configurationBuilder.jmxStatistics().enable();
     }
@@ -182,33 +233,107 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
     public void addExpiration(ConfigurationBuilder configurationBuilder) {
         long cacheExpiry = getInfinispanCacheExpiryValue(infinispanConfiguration.getExpiration());
         configurationBuilder.expiration().lifespan(cacheExpiry);
+        configurationBuilder.expiration().maxIdle(getInfinispanCacheExpiryValue(infinispanConfiguration.getMaxIdle()));
+        // InfinispanCacheManager runs the reaper itself so that each sweep can be timed
+        configurationBuilder.expiration()
+                .reaperEnabled(false)
+                .wakeUpInterval(infinispanConfiguration.getReaperInterval().or(DEFAULT_REAPER_INTERVAL).toMilliseconds());
+    }
+
+    public void addEviction(ConfigurationBuilder configurationBuilder) {
+        if (infinispanConfiguration.getEviction().isPresent()) {
+            InfinispanCacheManager.applyEviction(configurationBuilder, infinispanConfiguration.getEviction().get());
+        }
     }
 
     public void addPersistence(ConfigurationBuilder configurationBuilder) {
-        configurationBuilder.persistence()
-                .addSingleFileStore()
-                .location(infinispanConfiguration.getPersistenceFileLocation().get());
+        PersistenceConfigurationBuilder persistenceConfigurationBuilder = configurationBuilder.persistence()
+                .passivation(infinispanConfiguration.getPassivation());
+        String location = infinispanConfiguration.getPersistenceFileLocation().get();
+        AbstractStoreConfigurationBuilder<?, ?> storeConfigurationBuilder;
+        if (infinispanConfiguration.getPersistenceStore() == PersistenceStoreType.levelDb) {
+            storeConfigurationBuilder = persistenceConfigurationBuilder.addStore(LevelDBStoreConfigurationBuilder.class)
+                    .location(Paths.get(location, "data").toString())
+                    .expiredLocation(Paths.get(location, "expired").toString())
+                    .implementationType(LevelDBStoreConfiguration.ImplementationType.AUTO);
+        } else {
+            storeConfigurationBuilder = persistenceConfigurationBuilder.addSingleFileStore()
+                    .location(location);
+        }
+        if (infinispanConfiguration.getWriteBehind().isPresent()) {
+            WriteBehindConfiguration writeBehind = infinispanConfiguration.getWriteBehind().get();
+            storeConfigurationBuilder.async()
+                    .enable()
+                    .modificationQueueSize(writeBehind.getModificationQueueSize())
+                    .threadPoolSize(writeBehind.getThreadPoolSize())
+                    .shutdownTimeout(writeBehind.getShutdownTimeout().toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private GlobalConfigurationBuilder addSerialization(GlobalConfigurationBuilder globalConfigurationBuilder) {
+        for (String externalizer : infinispanConfiguration.getExternalizers()) {
+            try {
+                // a class literal can only name the raw type, so view the instance as an externalizer of some type
+                AdvancedExternalizer<?> advancedExternalizer = (AdvancedExternalizer<?>) Class.forName(externalizer).asSubclass(AdvancedExternalizer.class).newInstance();
+                globalConfigurationBuilder.serialization().addAdvancedExternalizer(advancedExternalizer);
+            } catch (ReflectiveOperationException e) {
+                throw Throwables.propagate(e);
+            }
+        }
+        if (infinispanConfiguration.getCompression().isPresent()) {
+            globalConfigurationBuilder.serialization().addAdvancedExternalizer(new CompressedValueExternalizer());
+        }
+        return globalConfigurationBuilder;
+    }
+
+    private GlobalConfigurationBuilder addCacheManagerName(GlobalConfigurationBuilder globalConfigurationBuilder) {
+        Optional<String> cacheManagerName = infinispanConfiguration.getCacheManagerName().or(name);
+        if (cacheManagerName.isPresent()) {
+            // the name keeps each cache manager's MBeans apart when several run in one JVM
+            globalConfigurationBuilder.globalJmxStatistics().cacheManagerName(cacheManagerName.get());
+        }
+        return globalConfigurationBuilder;
+    }
+
+    private JGroupsTransport jgroupsTransport(boolean secure) {
+        try {
+            return new JGroupsTransport(new JGroupsProtocolStack(infinispanConfiguration, secure).createChannel());
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
     }
 
     private void addClustering(ConfigurationBuilder configurationBuilder) {
         configurationBuilder
                 .clustering()
-                .cacheMode(CacheMode.REPL_SYNC)
+                .cacheMode(infinispanConfiguration.getAsyncReplication() ? CacheMode.REPL_ASYNC : CacheMode.REPL_SYNC)
                 .stateTransfer()
                 .awaitInitialTransfer(infinispanConfiguration.getAwaitInitialTransfer())
                 .fetchInMemoryState(infinispanConfiguration.getFetchInMemoryState())
                 .timeout(infinispanConfiguration.getStateTransferTimeout(), TimeUnit.SECONDS);
+        if (infinispanConfiguration.getReplicationQueue().isPresent()) {
+            ReplicationQueueConfiguration replicationQueue = infinispanConfiguration.getReplicationQueue().get();
+            configurationBuilder
+                    .clustering()
+                    .async()
+                    .useReplQueue(true)
+                    .replQueueMaxElements(replicationQueue.getMaxElements())
+                    .replQueueInterval(replicationQueue.getFlushInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
     }
 
     private InfinispanCacheManager standaloneCacheManagerWithoutPersistence(final MetricRegistry metrics) {
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         enableJMX(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
                 new DefaultCacheManager(
+                        addCacheManagerName(addSerialization(new GlobalConfigurationBuilder())).build(),
                         configurationBuilder.build()
-                )
+                ),
+                options()
         );
     }
 
@@ -216,10 +341,12 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         addPersistence(configurationBuilder);
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         enableJMX(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
-                new DefaultCacheManager(configurationBuilder.build())
+                new DefaultCacheManager(addCacheManagerName(addSerialization(new GlobalConfigurationBuilder())).build(), configurationBuilder.build()),
+                options()
         );
     }
 
@@ -228,81 +355,87 @@ public class InfinispanBundle implements ConfiguredBundle<InfinispanServiceConfi
         enableJMX(configurationBuilder);
         addPersistence(configurationBuilder);
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         addClustering(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
                 new DefaultCacheManager(
-                        GlobalConfigurationBuilder.defaultClusteredBuilder()
+                        addCacheManagerName(addSerialization(GlobalConfigurationBuilder.defaultClusteredBuilder()))
                                 .transport()
-                                .defaultTransport()
+                                .transport(jgroupsTransport(true))
                                 .clusterName(infinispanConfiguration.getClusterName())
-                                .addProperty("configurationFile", "jgroups.xml")
                                 .build(),
                         configurationBuilder.build()
-                )
+                ),
+                options()
         );
     }
 
     private InfinispanCacheManager clusteredCacheManagerWithoutPersistence(final InfinispanConfiguration infinispanConfiguration, final MetricRegistry metrics) {
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         addClustering(configurationBuilder);
         enableJMX(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
                 new DefaultCacheManager(
-                        GlobalConfigurationBuilder.defaultClusteredBuilder()
+                        addCacheManagerName(addSerialization(GlobalConfigurationBuilder.defaultClusteredBuilder()))
                                 .transport()
-                                .defaultTransport()
+                                .transport(jgroupsTransport(true))
                                 .clusterName(infinispanConfiguration.getClusterName())
-                                .addProperty("configurationFile", "jgroups.xml")
                                 .build(),
                         configurationBuilder.build()
-                )
+                ),
+                options()
         );
     }
 
     private InfinispanCacheManager insecureCacheManagerWithPersistence(final InfinispanConfiguration infinispanConfiguration, final MetricRegistry metrics) {
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         addPersistence(configurationBuilder);
         addClustering(configurationBuilder);
         enableJMX(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
                 new DefaultCacheManager(
-                        GlobalConfigurationBuilder.defaultClusteredBuilder()
+                        addCacheManagerName(addSerialization(GlobalConfigurationBuilder.defaultClusteredBuilder()))
                                 .transport()
-                                .defaultTransport()
+                                .transport(jgroupsTransport(false))
                                 .clusterName(infinispanConfiguration.getClusterName())
-                                .removeProperty("configurationFile")
-                                .addProperty("configurationFile", "jgroups-insecure.xml")
                                 .build(),
                         configurationBuilder.build()
-                )
+                ),
+                options()
         );
     }
 
     private InfinispanCacheManager insecureCacheManagerWithoutPersistence(final InfinispanConfiguration infinispanConfiguration, final MetricRegistry metrics) {
         ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
         addExpiration(configurationBuilder);
+        addEviction(configurationBuilder);
         addClustering(configurationBuilder);
         enableJMX(configurationBuilder);
         return new InfinispanCacheManager(
                 metrics,
                 new DefaultCacheManager(
-                        GlobalConfigurationBuilder.defaultClusteredBuilder()
+                        addCacheManagerName(addSerialization(GlobalConfigurationBuilder.defaultClusteredBuilder()))
                                 .transport()
-                                .defaultTransport()
+                                .transport(jgroupsTransport(false))
                                 .clusterName(infinispanConfiguration.getClusterName())
-                                .removeProperty("configurationFile")
-                                .addProperty("configurationFile", "jgroups-insecure.xml")
                                 .build(),
                         configurationBuilder.build()
-                )
+                ),
+                options()
         );
     }
 
+    private InfinispanCacheManagerOptions options() {
+        return InfinispanCacheManagerOptions.from(infinispanConfiguration).metricPrefix(metricPrefix);
+    }
+
     private long getInfinispanCacheExpiryValue(Optional<Duration> expiration) {
          return expiration.transform(Duration::toMilliseconds).or(INFINISPAN_CACHE_ENTRIES_NEVER_EXPIRE_MAGIC_VALUE);
     }
@@ -1,33 +1,123 @@
 package uk.gov.ida.shared.dropwizard.infinispan.util;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
 import com.codahale.metrics.jvm.JmxAttributeGauge;
+import com.google.common.base.Optional;
 import com.google.common.base.Throwables;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
 import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.cache.ExpirationConfiguration;
+import org.infinispan.configuration.cache.InterceptorConfiguration;
+import org.infinispan.interceptors.InvocationContextInterceptor;
 import org.infinispan.lifecycle.ComponentStatus;
 import org.infinispan.manager.EmbeddedCacheManager;
+import org.infinispan.persistence.async.AsyncCacheWriter;
+import org.infinispan.persistence.manager.PersistenceManager;
+import org.infinispan.persistence.manager.PersistenceManagerImpl;
+import org.infinispan.remoting.transport.Transport;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.EvictionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.L1Configuration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NamedCacheConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NearCacheConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.PreloadConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.RefreshAheadConfiguration;
 
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static java.text.MessageFormat.format;
 
 public class InfinispanCacheManager implements Managed {
     private static final Logger LOG = LoggerFactory.getLogger(InfinispanCacheManager.class);
+    private static final String LOADER_LOCKS_SUFFIX = ".loaderLocks";
+    static final String DEFAULT_METRIC_PREFIX = "uk.gov.ida.infinispan";
+    private static final int TOPOLOGY_HISTORY_SIZE = 100;
 
     private EmbeddedCacheManager embeddedCacheManager;
     private MetricRegistry registry;
+    private String metricPrefix;
+    private Map<String, NamedCacheConfiguration> cacheConfigurations;
+    private Optional<PreloadConfiguration> preloadConfiguration;
+    private boolean operationTimers;
+    private Optional<RefreshAheadConfiguration> refreshAheadConfiguration;
+    private Optional<ExecutorService> refreshExecutor;
+    private Optional<CompressionConfiguration> compression;
+    private Optional<HotKeysConfiguration> hotKeys;
+    private final ScheduledExecutorService reaperScheduler = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("infinispan-reaper-%d").setDaemon(true).build());
+    private final ConcurrentMap<String, ScheduledFuture<?>> reapers = new ConcurrentHashMap<>();
+    private CachePreloader cachePreloader;
+    private Optional<PreloadProgress> preloadProgress = Optional.absent();
+    private final ConcurrentMap<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, BulkCache<?, ?>> bulkCaches = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, HotKeySampler> hotKeySamplers = new ConcurrentHashMap<>();
+    private final TopologyHistory topologyHistory = new TopologyHistory(TOPOLOGY_HISTORY_SIZE);
+    private Map<String, Map<String, Object>> transportSettings = Collections.emptyMap();
 
     public InfinispanCacheManager(MetricRegistry registry, EmbeddedCacheManager embeddedCacheManager) {
+        this(registry, embeddedCacheManager, new InfinispanCacheManagerOptions());
+    }
+
+    public InfinispanCacheManager(MetricRegistry registry, EmbeddedCacheManager embeddedCacheManager, InfinispanCacheManagerOptions options) {
         this.registry = registry;
+        this.metricPrefix = options.getMetricPrefix();
         this.embeddedCacheManager = embeddedCacheManager;
+        this.cacheConfigurations = options.getCaches();
+        this.preloadConfiguration = options.getPreload();
+        this.operationTimers = options.getOperationTimers();
+        this.refreshAheadConfiguration = options.getRefreshAhead();
+        this.compression = options.getCompression();
+        this.hotKeys = options.getHotKeys();
+        this.refreshExecutor = refreshAheadConfiguration.transform(configuration -> new ThreadPoolExecutor(
+                configuration.getThreadPoolSize(),
+                configuration.getThreadPoolSize(),
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(configuration.getQueueSize()),
+                new ThreadFactoryBuilder().setNameFormat("infinispan-refresh-%d").setDaemon(true).build()
+        ));
     }
 
+    /**
+     * Cache handles are created, and their metrics registered, on the first call for a name;
+     * later calls return the same handle from a map lookup.
+     */
+    @SuppressWarnings("unchecked")
     public <T1,T2> Cache<T1,T2> getCache(String cacheName){
-        Cache<T1,T2> cache = embeddedCacheManager.getCache(cacheName, true);
+        return (Cache<T1,T2>) caches.computeIfAbsent(cacheName, this::createCache);
+    }
+
+    private Cache<?, ?> createCache(String cacheName) {
+        long startNanos = System.nanoTime();
+        Cache<?, ?> cache = startCache(cacheName);
 
         String jmxName = getJmxName(cache);
 
@@ -41,9 +131,236 @@ public class InfinispanCacheManager implements Managed {
         addCacheStatistics(cacheName, jmxName, "removeMisses");
         addCacheStatistics(cacheName, jmxName, "stores");
 
+        if (cache.getCacheConfiguration().eviction().strategy().isEnabled()) {
+            cache.addListener(new EvictionMeterListener(registry.meter(MetricRegistry.name(metricPrefix, cacheName, "evictionRate"))));
+        }
+        if (cache.getCacheConfiguration().persistence().usingAsyncStore()) {
+            addPendingStoreModifications(cacheName, cache);
+        }
+        if (cache.getCacheConfiguration().persistence().passivation()) {
+            cache.addListener(new PassivationCounterListener(
+                    registry.counter(MetricRegistry.name(metricPrefix, cacheName, "activations")),
+                    registry.counter(MetricRegistry.name(metricPrefix, cacheName, "passivations"))
+            ));
+        }
+        if (cache.getCacheConfiguration().clustering().cacheMode().isClustered()) {
+            RebalanceListener rebalanceListener = new RebalanceListener(
+                    cache.getAdvancedCache(),
+                    registry.meter(MetricRegistry.name(metricPrefix, cacheName, "topologyChanges")),
+                    registry.timer(MetricRegistry.name(metricPrefix, cacheName, "rebalanceDuration")),
+                    registry.histogram(MetricRegistry.name(metricPrefix, cacheName, "rebalanceEntriesReceived")),
+                    topologyHistory
+            );
+            cache.addListener(rebalanceListener);
+            rebalanceListener.cacheStarted(startNanos);
+        }
+
+        if (cacheConfigurations.containsKey(cacheName) && cacheConfigurations.get(cacheName).getNearCache().isPresent()) {
+            return withNearCache(cacheName, cache, cacheConfigurations.get(cacheName).getNearCache().get());
+        }
         return cache;
     }
 
+    private <K,V> Cache<K,V> withNearCache(String cacheName, Cache<K,V> cache, NearCacheConfiguration nearCacheConfiguration) {
+        NearCache<K,V> nearCache = new NearCache<>(cache, nearCacheConfiguration);
+        registry.register(MetricRegistry.name(metricPrefix, cacheName, "nearCacheHitRatio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                CacheStats stats = nearCache.stats();
+                return Ratio.of(stats.hitCount(), stats.requestCount());
+            }
+        });
+        registry.register(MetricRegistry.name(metricPrefix, cacheName, "nearCacheSize"), (Gauge<Long>) nearCache::heldValues);
+        return nearCache;
+    }
+
+    /**
+     * A cache for health probes, which only takes the default configuration's clustering mode, so that
+     * probing writes to no store and adds nothing to the metrics or sampled hot keys.
+     */
+    public <K,V> Cache<K,V> getProbeCache(String cacheName) {
+        if (embeddedCacheManager.getCacheConfiguration(cacheName) == null) {
+            ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+            configurationBuilder.clustering().cacheMode(embeddedCacheManager.getDefaultCacheConfiguration().clustering().cacheMode());
+            embeddedCacheManager.defineConfiguration(cacheName, configurationBuilder.build());
+        }
+        return embeddedCacheManager.getCache(cacheName);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <K,V> BulkCache<K,V> getBulkCache(String cacheName) {
+        return (BulkCache<K,V>) bulkCaches.computeIfAbsent(cacheName, name -> new BulkCache<>(
+                getCache(name),
+                registry.histogram(MetricRegistry.name(metricPrefix, name, "bulkGetBatchSize")),
+                registry.timer(MetricRegistry.name(metricPrefix, name, "bulkGetLatency")),
+                registry.histogram(MetricRegistry.name(metricPrefix, name, "bulkPutBatchSize")),
+                registry.timer(MetricRegistry.name(metricPrefix, name, "bulkPutLatency"))
+        ));
+    }
+
+    public <K,V> NonBlockingCache<K,V> getNonBlockingCache(String cacheName, Executor completionExecutor) {
+        return new NonBlockingCache<>(this.<K,V>getCache(cacheName), completionExecutor);
+    }
+
+    public <K,V> LoadingCache<K,V> getLoadingCache(String cacheName, Function<? super K, ? extends V> loader) {
+        return newLoadingCache(cacheName, loader, Optional.absent(), Duration.seconds(0));
+    }
+
+    /**
+     * As {@link #getLoadingCache(String, Function)}, but only one node in the cluster loads a key at a time.
+     * The lease bounds how long other nodes wait if the loading node dies; it relies on synchronous clustering.
+     */
+    public <K,V> LoadingCache<K,V> getLoadingCache(String cacheName, Function<? super K, ? extends V> loader, Duration clusterLockLease) {
+        return newLoadingCache(cacheName, loader, Optional.of(this.<K,String>startCache(cacheName + LOADER_LOCKS_SUFFIX)), clusterLockLease);
+    }
+
+    private <K,V> LoadingCache<K,V> newLoadingCache(String cacheName, Function<? super K, ? extends V> loader, Optional<Cache<K,String>> lockCache, Duration clusterLockLease) {
+        return new LoadingCache<>(
+                this.<K,V>getCache(cacheName),
+                loader,
+                lockCache,
+                clusterLockLease,
+                registry.timer(MetricRegistry.name(metricPrefix, cacheName, "loadLatency")),
+                registry.meter(MetricRegistry.name(metricPrefix, cacheName, "coalescedLoads")),
+                registry.meter(MetricRegistry.name(metricPrefix, cacheName, "loadFailures")),
+                refreshExecutor.transform(executor -> new RefreshAhead(
+                        executor,
+                        refreshAheadConfiguration.get().getWindow().toMilliseconds(),
+                        registry.meter(MetricRegistry.name(metricPrefix, cacheName, "refreshes")),
+                        registry.timer(MetricRegistry.name(metricPrefix, cacheName, "refreshLatency"))
+                ))
+        );
+    }
+
+    public <K,V> ExpiringCache<K,V> getExpiringCache(String cacheName) {
+        return new ExpiringCache<>(this.<K,V>getCache(cacheName));
+    }
+
+    private <T1,T2> Cache<T1,T2> startCache(String cacheName) {
+        if (!embeddedCacheManager.cacheExists(cacheName)) {
+            defineConfiguration(cacheName);
+        }
+        Cache<T1,T2> cache = embeddedCacheManager.getCache(cacheName, true);
+        ExpirationConfiguration expiration = cache.getCacheConfiguration().expiration();
+        if (!expiration.reaperEnabled() && expiration.wakeUpInterval() > 0) {
+            reapers.computeIfAbsent(cacheName, name -> reaperScheduler.scheduleWithFixedDelay(
+                    new ExpirationReaper(
+                            cache.getAdvancedCache(),
+                            registry.timer(MetricRegistry.name(metricPrefix, name, "reaperSweepDuration")),
+                            registry.meter(MetricRegistry.name(metricPrefix, name, "reaperPurgedEntries"))
+                    ),
+                    expiration.wakeUpInterval(), expiration.wakeUpInterval(), TimeUnit.MILLISECONDS
+            ));
+        }
+        return cache;
+    }
+
+    private void defineConfiguration(String cacheName) {
+        Configuration defaultConfiguration = embeddedCacheManager.getDefaultCacheConfiguration();
+        boolean useReplicationQueue = defaultConfiguration.clustering().async().useReplQueue();
+        boolean useOperationTimers = cacheConfigurations.containsKey(cacheName)
+                ? cacheConfigurations.get(cacheName).getOperationTimers().or(operationTimers)
+                : operationTimers;
+        // loader lock values are tiny, so not worth marshalling to check their size
+        boolean useCompression = compression.isPresent() && !cacheName.endsWith(LOADER_LOCKS_SUFFIX);
+        boolean useHotKeys = hotKeys.isPresent() && !cacheName.endsWith(LOADER_LOCKS_SUFFIX);
+        if (!cacheConfigurations.containsKey(cacheName) && !useReplicationQueue && !useOperationTimers && !useCompression && !useHotKeys) {
+            return;
+        }
+
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder().read(defaultConfiguration);
+        if (cacheConfigurations.containsKey(cacheName)) {
+            applyNamedConfiguration(configurationBuilder, cacheConfigurations.get(cacheName));
+        }
+        if (useReplicationQueue) {
+            CacheMode cacheMode = configurationBuilder.clustering().cacheMode();
+            if (cacheMode.isSynchronous() || cacheMode.isDistributed()) {
+                // Infinispan only batches asynchronous replicated and invalidation traffic
+                configurationBuilder.clustering().async().useReplQueue(false);
+            } else {
+                configurationBuilder.clustering().async().replQueue(instrumentedReplicationQueue(cacheName));
+            }
+        }
+        if (useCompression) {
+            configurationBuilder.customInterceptors().addInterceptor()
+                    .interceptor(new CompressionInterceptor(compression.get(), registry, MetricRegistry.name(metricPrefix, cacheName)))
+                    .after(InvocationContextInterceptor.class);
+        }
+        if (useHotKeys) {
+            HotKeySampler sampler = hotKeySamplers.computeIfAbsent(cacheName, name -> new HotKeySampler(hotKeys.get()));
+            configurationBuilder.customInterceptors().addInterceptor()
+                    .interceptor(new HotKeyInterceptor(sampler))
+                    .position(InterceptorConfiguration.Position.FIRST);
+        }
+        if (useOperationTimers) {
+            configurationBuilder.customInterceptors().addInterceptor()
+                    .interceptor(new OperationTimerInterceptor(registry, MetricRegistry.name(metricPrefix, cacheName)))
+                    .position(InterceptorConfiguration.Position.FIRST);
+        }
+        embeddedCacheManager.defineConfiguration(cacheName, configurationBuilder.build());
+    }
+
+    private void applyNamedConfiguration(ConfigurationBuilder configurationBuilder, NamedCacheConfiguration namedCacheConfiguration) {
+        if (namedCacheConfiguration.getMode().isPresent()) {
+            boolean asynchronous = !configurationBuilder.clustering().cacheMode().isSynchronous();
+            CacheMode cacheMode = namedCacheConfiguration.getMode().get().toCacheMode(asynchronous);
+            configurationBuilder.clustering().cacheMode(cacheMode);
+            if (!cacheMode.isReplicated() && !cacheMode.isDistributed()) {
+                // state transfer only applies to caches which own a copy of the data
+                configurationBuilder.clustering().stateTransfer().awaitInitialTransfer(false).fetchInMemoryState(false);
+            }
+        }
+        if (namedCacheConfiguration.getNumOwners().isPresent()) {
+            configurationBuilder.clustering().hash().numOwners(namedCacheConfiguration.getNumOwners().get());
+        }
+        if (namedCacheConfiguration.getL1().isPresent()) {
+            L1Configuration l1 = namedCacheConfiguration.getL1().get();
+            configurationBuilder.clustering().l1().enable()
+                    .lifespan(l1.getLifespan().toMilliseconds())
+                    .invalidationThreshold(l1.getInvalidationThreshold());
+        }
+        if (namedCacheConfiguration.getMaxIdle().isPresent()) {
+            configurationBuilder.expiration().maxIdle(namedCacheConfiguration.getMaxIdle().get().toMilliseconds());
+        }
+        if (namedCacheConfiguration.getReaperInterval().isPresent()) {
+            configurationBuilder.expiration().wakeUpInterval(namedCacheConfiguration.getReaperInterval().get().toMilliseconds());
+        }
+        if (namedCacheConfiguration.getEviction().isPresent()) {
+            applyEviction(configurationBuilder, namedCacheConfiguration.getEviction().get());
+        }
+    }
+
+    static void applyEviction(ConfigurationBuilder configurationBuilder, EvictionConfiguration eviction) {
+        configurationBuilder.eviction()
+                .maxEntries(eviction.getMaxEntries())
+                .strategy(eviction.getStrategy())
+                .threadPolicy(eviction.getThreadPolicy());
+    }
+
+    private InstrumentedReplicationQueue instrumentedReplicationQueue(String cacheName) {
+        InstrumentedReplicationQueue replicationQueue = new InstrumentedReplicationQueue(
+                registry.timer(MetricRegistry.name(metricPrefix, cacheName, "replicationQueueFlush")),
+                registry.histogram(MetricRegistry.name(metricPrefix, cacheName, "replicationQueueBatchSize"))
+        );
+        registry.register(MetricRegistry.name(metricPrefix, cacheName, "replicationQueueSize"), (Gauge<Integer>) replicationQueue::getElementsCount);
+        return replicationQueue;
+    }
+
+    private void addPendingStoreModifications(String cacheName, Cache<?, ?> cache) {
+        PersistenceManager persistenceManager = cache.getAdvancedCache().getComponentRegistry().getComponent(PersistenceManager.class);
+        if (!(persistenceManager instanceof PersistenceManagerImpl)) {
+            return;
+        }
+        List<AsyncCacheWriter> asyncCacheWriters = ((PersistenceManagerImpl) persistenceManager).getAllWriters().stream()
+                .filter(AsyncCacheWriter.class::isInstance)
+                .map(AsyncCacheWriter.class::cast)
+                .collect(Collectors.toList());
+        registry.register(
+                MetricRegistry.name(metricPrefix, cacheName, "pendingStoreModifications"),
+                (Gauge<Integer>) () -> asyncCacheWriters.stream().mapToInt(writer -> writer.getState().get().getKeysInTransit().size()).sum()
+        );
+    }
+
     private String getJmxName(Cache cache){
         String cacheName = cache.getName();
         String cacheModeString = cache.getCacheConfiguration().clustering().cacheMode().toString().toLowerCase();
@@ -54,7 +371,7 @@ public class InfinispanCacheManager implements Managed {
 
     private void addCacheStatistics(String cacheName, String jmxName, String attribute){
         try {
-            registry.register(MetricRegistry.name("uk.gov.ida.infinispan", cacheName, attribute), new JmxAttributeGauge(ObjectName.getInstance(jmxName), attribute));
+            registry.register(MetricRegistry.name(metricPrefix, cacheName, attribute), new JmxAttributeGauge(ObjectName.getInstance(jmxName), attribute));
         } catch (MalformedObjectNameException e) {
             throw Throwables.propagate(e);
         }
@@ -62,14 +379,63 @@ public class InfinispanCacheManager implements Managed {
 
     @Override
     public void start() {
+        Transport transport = embeddedCacheManager.getCacheManagerConfiguration().transport().transport();
+        if (transport instanceof JGroupsTransport && ((JGroupsTransport) transport).getChannel() != null) {
+            TransportMetrics.register(registry, metricPrefix, ((JGroupsTransport) transport).getChannel());
+            // the settings do not change once the channel is built, and reading them back walks every protocol
+            transportSettings = JGroupsProtocolStack.effectiveValues(((JGroupsTransport) transport).getChannel());
+        }
         embeddedCacheManager.start();
+        embeddedCacheManager.addListener(new ClusterViewListener(
+                registry.meter(MetricRegistry.name(metricPrefix, "viewChanges")),
+                registry.meter(MetricRegistry.name(metricPrefix, "merges")),
+                topologyHistory
+        ));
+        if (preloadConfiguration.isPresent()) {
+            cachePreloader = new CachePreloader(preloadConfiguration.get().getThreadPoolSize());
+            preloadProgress = Optional.of(cachePreloader.start(preloadConfiguration.get().getCacheNames(), this::getCache));
+        }
     }
 
     @Override
     public void stop() {
+        if (cachePreloader != null) {
+            cachePreloader.stop();
+        }
+        if (refreshExecutor.isPresent()) {
+            refreshExecutor.get().shutdownNow();
+        }
+        reaperScheduler.shutdownNow();
         embeddedCacheManager.stop();
     }
 
+    /**
+     * @return the most recent view changes, merges and cache rebalances seen by this node, oldest first
+     */
+    public List<TopologyEvent> getTopologyEvents() {
+        return topologyHistory.getEvents();
+    }
+
+    /**
+     * @return the effective settings of the JGroups protocols, as read back when this manager started
+     */
+    Map<String, Map<String, Object>> getTransportSettings() {
+        return transportSettings;
+    }
+
+    /**
+     * @return the most frequently read and written keys of each cache, by cache name, when {@code hotKeys} is configured
+     */
+    public Map<String, HotKeys> getHotKeys() {
+        Map<String, HotKeys> hottest = new LinkedHashMap<>();
+        hotKeySamplers.keySet().stream().sorted().forEach(cacheName -> hottest.put(cacheName, hotKeySamplers.get(cacheName).getHotKeys()));
+        return hottest;
+    }
+
+    public Optional<PreloadProgress> getPreloadProgress() {
+        return preloadProgress;
+    }
+
     // package local on purpose :-)
     EmbeddedCacheManager getEmbeddedCacheManager(){
         return embeddedCacheManager;
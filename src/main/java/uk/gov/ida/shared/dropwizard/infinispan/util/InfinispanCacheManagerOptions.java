@@ -0,0 +1,112 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.base.Optional;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NamedCacheConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.PreloadConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.RefreshAheadConfiguration;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * What an {@link InfinispanCacheManager} does beyond creating caches from the default configuration,
+ * all of which is off until set.
+ */
+public class InfinispanCacheManagerOptions {
+
+    private Map<String, NamedCacheConfiguration> caches = Collections.emptyMap();
+    private Optional<PreloadConfiguration> preload = Optional.absent();
+    private boolean operationTimers = false;
+    private Optional<RefreshAheadConfiguration> refreshAhead = Optional.absent();
+    private String metricPrefix = InfinispanCacheManager.DEFAULT_METRIC_PREFIX;
+    private Optional<CompressionConfiguration> compression = Optional.absent();
+    private Optional<HotKeysConfiguration> hotKeys = Optional.absent();
+
+    /**
+     * @return the options set in the configuration, with the default metric prefix
+     */
+    public static InfinispanCacheManagerOptions from(InfinispanConfiguration configuration) {
+        return new InfinispanCacheManagerOptions()
+                .caches(configuration.getCaches())
+                .preload(configuration.getPreload())
+                .operationTimers(configuration.getOperationTimers())
+                .refreshAhead(configuration.getRefreshAhead())
+                .compression(configuration.getCompression())
+                .hotKeys(configuration.getHotKeys());
+    }
+
+    public InfinispanCacheManagerOptions caches(Map<String, NamedCacheConfiguration> caches) {
+        this.caches = caches;
+        return this;
+    }
+
+    public InfinispanCacheManagerOptions preload(Optional<PreloadConfiguration> preload) {
+        this.preload = preload;
+        return this;
+    }
+
+    public InfinispanCacheManagerOptions operationTimers(boolean operationTimers) {
+        this.operationTimers = operationTimers;
+        return this;
+    }
+
+    public InfinispanCacheManagerOptions refreshAhead(Optional<RefreshAheadConfiguration> refreshAhead) {
+        this.refreshAhead = refreshAhead;
+        return this;
+    }
+
+    /**
+     * @param metricPrefix prefix of the names of the manager's metrics, which must differ between managers sharing a registry
+     */
+    public InfinispanCacheManagerOptions metricPrefix(String metricPrefix) {
+        this.metricPrefix = metricPrefix;
+        return this;
+    }
+
+    /**
+     * @param compression compresses large values in every cache, which needs {@link uk.gov.ida.shared.dropwizard.infinispan.marshalling.CompressedValueExternalizer} registered with the cache manager
+     */
+    public InfinispanCacheManagerOptions compression(Optional<CompressionConfiguration> compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    /**
+     * @param hotKeys samples the keys read and written in every cache, for {@link InfinispanCacheManager#getHotKeys()}
+     */
+    public InfinispanCacheManagerOptions hotKeys(Optional<HotKeysConfiguration> hotKeys) {
+        this.hotKeys = hotKeys;
+        return this;
+    }
+
+    Map<String, NamedCacheConfiguration> getCaches() {
+        return caches;
+    }
+
+    Optional<PreloadConfiguration> getPreload() {
+        return preload;
+    }
+
+    boolean getOperationTimers() {
+        return operationTimers;
+    }
+
+    Optional<RefreshAheadConfiguration> getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    String getMetricPrefix() {
+        return metricPrefix;
+    }
+
+    Optional<CompressionConfiguration> getCompression() {
+        return compression;
+    }
+
+    Optional<HotKeysConfiguration> getHotKeys() {
+        return hotKeys;
+    }
+}
@@ -11,10 +11,14 @@ import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
 
 import javax.annotation.Nullable;
 import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
 import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Arrays.asList;
@@ -25,26 +29,57 @@ public class InfinispanDetailsResource {
 
     private final InfinispanCacheManager infinispanCacheManager;
     private final InfinispanConfiguration infinispanConfiguration;
+    private final Map<String, InfinispanCacheManager> namedCacheManagers;
 
     public InfinispanDetailsResource(InfinispanCacheManager infinispanCacheManager, InfinispanConfiguration infinispanConfiguration) {
+        this(infinispanCacheManager, infinispanConfiguration, Collections.emptyMap());
+    }
+
+    public InfinispanDetailsResource(InfinispanCacheManager infinispanCacheManager, InfinispanConfiguration infinispanConfiguration, Map<String, InfinispanCacheManager> namedCacheManagers) {
         this.infinispanCacheManager = infinispanCacheManager;
         this.infinispanConfiguration = infinispanConfiguration;
+        this.namedCacheManagers = namedCacheManagers;
     }
 
     @GET
     public InfinispanDetails getInfinispanDetails(){
 
-        return new InfinispanDetails(infinispanCacheManager.getEmbeddedCacheManager(), infinispanConfiguration);
+        return new InfinispanDetails(infinispanCacheManager, infinispanConfiguration);
+    }
+
+    @GET
+    @Path("{name}")
+    public InfinispanDetails getNamedInfinispanDetails(@PathParam("name") String name) {
+        InfinispanCacheManager cacheManager = namedCacheManagers.get(name);
+        if (cacheManager == null) {
+            throw new NotFoundException();
+        }
+        return new InfinispanDetails(cacheManager, infinispanConfiguration.getCacheManagers().get(name));
     }
 
     public static class InfinispanDetails {
 
         private final EmbeddedCacheManager cacheManager;
         private final InfinispanConfiguration infinispanConfiguration;
+        private final Map<String, Map<String, Object>> transport;
+        private final List<TopologyEvent> topologyEvents;
 
+        /**
+         * Reports no transport settings or topology events, which only an {@link InfinispanCacheManager} keeps.
+         */
         public InfinispanDetails(EmbeddedCacheManager cacheManager, InfinispanConfiguration infinispanConfiguration) {
+            this(cacheManager, infinispanConfiguration, Collections.emptyMap(), Collections.emptyList());
+        }
+
+        InfinispanDetails(InfinispanCacheManager cacheManager, InfinispanConfiguration infinispanConfiguration) {
+            this(cacheManager.getEmbeddedCacheManager(), infinispanConfiguration, cacheManager.getTransportSettings(), cacheManager.getTopologyEvents());
+        }
+
+        private InfinispanDetails(EmbeddedCacheManager cacheManager, InfinispanConfiguration infinispanConfiguration, Map<String, Map<String, Object>> transport, List<TopologyEvent> topologyEvents) {
             this.cacheManager = cacheManager;
             this.infinispanConfiguration = infinispanConfiguration;
+            this.transport = transport;
+            this.topologyEvents = topologyEvents;
         }
 
         public int getClusterSize() {
@@ -99,6 +134,14 @@ public class InfinispanDetailsResource {
             return String.valueOf(cacheManager.getCoordinator());
         }
 
+        public Map<String, Map<String, Object>> getTransport() {
+            return transport;
+        }
+
+        public List<TopologyEvent> getTopologyEvents() {
+            return topologyEvents;
+        }
+
 
     }
 }
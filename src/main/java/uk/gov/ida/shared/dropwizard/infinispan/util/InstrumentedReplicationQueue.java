@@ -0,0 +1,35 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Timer;
+import org.infinispan.remoting.ReplicationQueueImpl;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ReplicationQueueImpl} which records how long each non-empty flush takes
+ * and how many commands it sends in one batch.
+ * <p/>
+ * Infinispan uses the configured queue instance directly, so each cache needs its own.
+ */
+class InstrumentedReplicationQueue extends ReplicationQueueImpl {
+
+    private final Timer flushTimer;
+    private final Histogram batchSizes;
+
+    InstrumentedReplicationQueue(Timer flushTimer, Histogram batchSizes) {
+        this.flushTimer = flushTimer;
+        this.batchSizes = batchSizes;
+    }
+
+    @Override
+    public synchronized int flush() {
+        long start = System.nanoTime();
+        int flushed = super.flush();
+        if (flushed > 0) {
+            flushTimer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            batchSizes.update(flushed);
+        }
+        return flushed;
+    }
+}
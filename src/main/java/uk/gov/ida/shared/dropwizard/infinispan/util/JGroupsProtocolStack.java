@@ -0,0 +1,180 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.collect.ImmutableMap;
+import org.jgroups.Channel;
+import org.jgroups.JChannel;
+import org.jgroups.conf.ProtocolConfiguration;
+import org.jgroups.conf.ProtocolStackConfigurator;
+import org.jgroups.stack.Protocol;
+import uk.gov.ida.shared.dropwizard.infinispan.config.AuthConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.EncryptConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.ThreadPoolConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.TransportConfiguration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the JGroups protocol stack for clustered caches from {@link InfinispanConfiguration},
+ * in place of an XML file with system property placeholders. The secured stack adds X.509
+ * authentication and encryption to the insecure one.
+ */
+class JGroupsProtocolStack implements ProtocolStackConfigurator {
+
+    /**
+     * The tunable properties of each protocol, as reported on the details endpoint.
+     */
+    private static final Map<String, List<String>> TUNABLE_PROPERTIES = ImmutableMap.of(
+            "TCP", tunables("thread_pool", "oob_thread_pool", "max_bundle_size", "max_bundle_timeout", "recv_buf_size", "send_buf_size"),
+            "MFC", tunables("max_credits", "min_credits", "min_threshold"),
+            "FRAG2", tunables("frag_size")
+    );
+
+    private final InfinispanConfiguration configuration;
+    private final boolean secure;
+
+    JGroupsProtocolStack(InfinispanConfiguration configuration, boolean secure) {
+        this.configuration = configuration;
+        this.secure = secure;
+    }
+
+    JChannel createChannel() throws Exception {
+        return new JChannel(this);
+    }
+
+    @Override
+    public String getProtocolStackString() {
+        return getProtocolStack().stream()
+                .map(ProtocolConfiguration::getProtocolString)
+                .collect(Collectors.joining(":"));
+    }
+
+    @Override
+    public List<ProtocolConfiguration> getProtocolStack() {
+        TransportConfiguration transport = configuration.getTransport();
+        List<ProtocolConfiguration> stack = new ArrayList<>();
+
+        Map<String, String> tcp = new LinkedHashMap<>();
+        tcp.put("bind_addr", configuration.getBindAddress());
+        tcp.put("bind_port", String.valueOf(configuration.getPort()));
+        tcp.put("loopback", "true");
+        tcp.put("port_range", "0");
+        tcp.put("recv_buf_size", String.valueOf(transport.getRecvBufSize()));
+        tcp.put("send_buf_size", String.valueOf(transport.getSendBufSize()));
+        tcp.put("max_bundle_size", String.valueOf(transport.getMaxBundleSize()));
+        tcp.put("max_bundle_timeout", String.valueOf(transport.getMaxBundleTimeout().toMilliseconds()));
+        tcp.put("use_send_queues", "true");
+        tcp.put("enable_diagnostics", "false");
+        tcp.put("thread_naming_pattern", "pl");
+        putThreadPool(tcp, "thread_pool", transport.getThreadPool());
+        putThreadPool(tcp, "oob_thread_pool", transport.getOobThreadPool());
+        stack.add(protocol("TCP", tcp));
+
+        stack.add(protocol("TCPPING", ImmutableMap.of(
+                "timeout", "10000",
+                "initial_hosts", configuration.getInitialHosts(),
+                "port_range", "0",
+                "ergonomics", "false")));
+        stack.add(protocol("MERGE2", ImmutableMap.of("max_interval", "30000", "min_interval", "10000")));
+        stack.add(protocol("FD_SOCK", ImmutableMap.of()));
+        stack.add(protocol("FD", ImmutableMap.of("timeout", "3000", "max_tries", "3")));
+        stack.add(protocol("VERIFY_SUSPECT", ImmutableMap.of("timeout", "1500")));
+        stack.add(protocol("pbcast.NAKACK2", ImmutableMap.<String, String>builder()
+                .put("use_mcast_xmit", "false")
+                .put("xmit_interval", "1000")
+                .put("xmit_table_num_rows", "100")
+                .put("xmit_table_msgs_per_row", "10000")
+                .put("xmit_table_max_compaction_time", "10000")
+                .put("max_msg_batch_size", "100")
+                .build()));
+        stack.add(protocol("UNICAST2", ImmutableMap.<String, String>builder()
+                .put("stable_interval", "5000")
+                .put("xmit_interval", "500")
+                .put("max_bytes", "1m")
+                .put("xmit_table_num_rows", "20")
+                .put("xmit_table_msgs_per_row", "10000")
+                .put("xmit_table_max_compaction_time", "10000")
+                .put("max_msg_batch_size", "100")
+                .put("conn_expiry_timeout", "0")
+                .build()));
+        stack.add(protocol("pbcast.STABLE", ImmutableMap.of("stability_delay", "500", "desired_avg_gossip", "5000", "max_bytes", "1m")));
+
+        if (secure) {
+            AuthConfiguration auth = configuration.getAuthConfiguration().get();
+            stack.add(protocol("AUTH", ImmutableMap.<String, String>builder()
+                    .put("auth_class", "org.jgroups.auth.X509Token")
+                    .put("auth_value", auth.getAuthValue())
+                    .put("keystore_path", auth.getKeyStorePath())
+                    .put("keystore_password", auth.getKeyStorePassword())
+                    .put("keystore_type", auth.getKeyStoreType())
+                    .put("cert_alias", auth.getCertAlias())
+                    .put("cipher_type", auth.getCipherType())
+                    .build()));
+            EncryptConfiguration encrypt = configuration.getEncryptConfiguration().get();
+            stack.add(protocol("ENCRYPT", ImmutableMap.of(
+                    "key_store_name", encrypt.getKeyStoreName(),
+                    "store_password", encrypt.getKeyStorePassword(),
+                    "alias", encrypt.getEncryptionKeyAlias())));
+        }
+
+        stack.add(protocol("pbcast.GMS", ImmutableMap.of("print_local_addr", "false", "view_bundling", "true")));
+        stack.add(protocol("MFC", ImmutableMap.of(
+                "max_credits", String.valueOf(transport.getMaxCredits()),
+                "min_credits", String.valueOf(transport.getMinCredits()),
+                "min_threshold", String.valueOf(transport.getMinThreshold()))));
+        stack.add(protocol("FRAG2", ImmutableMap.of("frag_size", String.valueOf(transport.getFragSize()))));
+        stack.add(protocol("RSVP", ImmutableMap.of("timeout", "60000", "resend_interval", "500", "ack_on_delivery", "false")));
+        return stack;
+    }
+
+    /**
+     * @return the values of the tunable properties in use by each protocol of the channel
+     */
+    static Map<String, Map<String, Object>> effectiveValues(Channel channel) {
+        Map<String, Map<String, Object>> values = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> tunable : TUNABLE_PROPERTIES.entrySet()) {
+            Protocol protocol = channel.getProtocolStack().findProtocol(tunable.getKey());
+            if (protocol == null) {
+                continue;
+            }
+            Map<String, Object> protocolValues = new LinkedHashMap<>();
+            for (String property : tunable.getValue()) {
+                // fields are named after their properties, with underscores for dots
+                protocolValues.put(property, protocol.getValue(property.replace('.', '_')));
+            }
+            values.put(tunable.getKey(), protocolValues);
+        }
+        return values;
+    }
+
+    private static void putThreadPool(Map<String, String> properties, String prefix, ThreadPoolConfiguration threadPool) {
+        properties.put(prefix + ".min_threads", String.valueOf(threadPool.getMinThreads()));
+        properties.put(prefix + ".max_threads", String.valueOf(threadPool.getMaxThreads()));
+        properties.put(prefix + ".keep_alive_time", String.valueOf(threadPool.getKeepAliveTime().toMilliseconds()));
+        properties.put(prefix + ".queue_enabled", String.valueOf(threadPool.getQueueEnabled()));
+        properties.put(prefix + ".queue_max_size", String.valueOf(threadPool.getQueueMaxSize()));
+    }
+
+    private static List<String> tunables(String... properties) {
+        List<String> expanded = new ArrayList<>();
+        for (String property : properties) {
+            if (property.endsWith("thread_pool")) {
+                for (String threadPoolProperty : new String[]{"min_threads", "max_threads", "keep_alive_time", "queue_enabled", "queue_max_size"}) {
+                    expanded.add(property + "." + threadPoolProperty);
+                }
+            } else {
+                expanded.add(property);
+            }
+        }
+        return expanded;
+    }
+
+    private static ProtocolConfiguration protocol(String name, Map<String, String> properties) {
+        // ProtocolConfiguration removes properties as it applies them, so give it its own copy
+        return new ProtocolConfiguration(name, new LinkedHashMap<>(properties));
+    }
+}
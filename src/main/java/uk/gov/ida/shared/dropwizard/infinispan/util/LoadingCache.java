@@ -0,0 +1,172 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import io.dropwizard.util.Duration;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.context.Flag;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A cache which computes missing values with a loader, running at most one load per key at a time.
+ * <p/>
+ * Callers which miss on a key that is already being loaded on this node wait for that load rather
+ * than starting their own. With a cluster lock, a node first takes a short lease on the key in a
+ * companion cache; nodes which find the lease held poll until the value appears or the lease lapses.
+ * Coalescing only happens within one instance, so create one per cache and share it.
+ * <p/>
+ * With refresh-ahead configured, reading an entry close to its expiry also queues a background
+ * reload, and the current value is returned without waiting for it.
+ */
+public class LoadingCache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final Function<? super K, ? extends V> loader;
+    private final Optional<AdvancedCache<K, String>> lockCache;
+    private final Duration lockLease;
+    private final Timer loadLatency;
+    private final Meter coalescedLoads;
+    private final Meter loadFailures;
+    private final Optional<RefreshAhead> refreshAhead;
+    private final ConcurrentMap<K, CompletableFuture<V>> loadsInFlight = new ConcurrentHashMap<>();
+    private final String owner = UUID.randomUUID().toString();
+
+    LoadingCache(Cache<K, V> cache, Function<? super K, ? extends V> loader, Optional<Cache<K, String>> lockCache, Duration lockLease,
+                 Timer loadLatency, Meter coalescedLoads, Meter loadFailures, Optional<RefreshAhead> refreshAhead) {
+        this.cache = cache;
+        this.loader = loader;
+        this.lockCache = lockCache.transform(locks -> locks.getAdvancedCache().withFlags(Flag.SKIP_CACHE_LOAD, Flag.SKIP_CACHE_STORE));
+        this.lockLease = lockLease;
+        this.loadLatency = loadLatency;
+        this.coalescedLoads = coalescedLoads;
+        this.loadFailures = loadFailures;
+        this.refreshAhead = refreshAhead;
+    }
+
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    /**
+     * @return the cached value, loading it if absent, or null if the loader returned null
+     */
+    public V get(K key) {
+        V value = cached(key);
+        if (value != null) {
+            return value;
+        }
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loadsInFlight.putIfAbsent(key, load);
+        if (inFlight != null) {
+            coalescedLoads.mark();
+            return await(inFlight);
+        }
+
+        try {
+            load.complete(lockCache.isPresent() ? loadUnderClusterLock(key) : loadAndStore(key));
+        } catch (RuntimeException | Error e) {
+            loadFailures.mark();
+            load.completeExceptionally(e);
+        } finally {
+            loadsInFlight.remove(key, load);
+        }
+        return await(load);
+    }
+
+    private V cached(K key) {
+        if (!refreshAhead.isPresent()) {
+            return cache.get(key);
+        }
+        CacheEntry<K, V> entry = cache.getAdvancedCache().getCacheEntry(key);
+        if (entry == null) {
+            return null;
+        }
+        if (refreshAhead.get().isDue(entry)) {
+            refreshAhead.get().refresh(key, () -> reload(key));
+        }
+        return entry.getValue();
+    }
+
+    private void reload(K key) {
+        if (lockCache.isPresent() && lockCache.get().putIfAbsent(key, owner, lockLease.toMilliseconds(), TimeUnit.MILLISECONDS) != null) {
+            // another node is already loading this key
+            return;
+        }
+        try {
+            V value = loader.apply(key);
+            if (value != null) {
+                cache.put(key, value);
+            }
+        } finally {
+            if (lockCache.isPresent()) {
+                lockCache.get().remove(key, owner);
+            }
+        }
+    }
+
+    private V loadUnderClusterLock(K key) {
+        long lease = lockLease.toMilliseconds();
+        long pollInterval = Math.max(1, Math.min(50, lease / 10));
+        while (true) {
+            String holder = lockCache.get().putIfAbsent(key, owner, lease, TimeUnit.MILLISECONDS);
+            if (holder == null) {
+                try {
+                    return loadAndStore(key);
+                } finally {
+                    lockCache.get().remove(key, owner);
+                }
+            }
+            do {
+                V value = cache.get(key);
+                if (value != null) {
+                    return value;
+                }
+                sleep(pollInterval);
+            } while (lockCache.get().containsKey(key));
+        }
+    }
+
+    private V loadAndStore(K key) {
+        // another caller may have finished loading between our miss and taking the load
+        V value = cache.get(key);
+        if (value != null) {
+            return value;
+        }
+        try (Timer.Context ignored = loadLatency.time()) {
+            value = loader.apply(key);
+        }
+        if (value != null) {
+            cache.put(key, value);
+        }
+        return value;
+    }
+
+    private static <V> V await(CompletableFuture<V> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.propagate(e);
+        }
+    }
+}
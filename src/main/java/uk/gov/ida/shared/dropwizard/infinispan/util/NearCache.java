@@ -0,0 +1,72 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.infinispan.Cache;
+import org.infinispan.cache.impl.AbstractDelegatingCache;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NearCacheConfiguration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers reads from a bounded on-heap copy of recently read values before going to the cache.
+ * <p/>
+ * A {@link NearCacheInvalidationListener} drops a value whenever the entry is modified or removed
+ * anywhere in the cluster. A read which raced with an invalidation is not kept, and every value
+ * is dropped after the configured lifespan regardless, which bounds how stale a missed
+ * invalidation can leave it.
+ * <p/>
+ * Only {@link #get(Object)} reads through the near cache. Every other read, including
+ * {@code getAsync}, {@code getCacheEntry} and anything on {@link #getAdvancedCache()}, goes
+ * straight to the cache and neither uses nor fills the near cache.
+ */
+class NearCache<K, V> extends AbstractDelegatingCache<K, V> {
+
+    private final com.google.common.cache.Cache<Object, V> values;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    NearCache(Cache<K, V> cache, NearCacheConfiguration configuration) {
+        super(cache);
+        this.values = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getMaxEntries())
+                .expireAfterWrite(configuration.getLifespan().toMilliseconds(), TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+        cache.addListener(new NearCacheInvalidationListener(this::invalidate));
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = values.getIfPresent(key);
+        if (value != null) {
+            return value;
+        }
+        long invalidationsBeforeRead = invalidations.get();
+        value = super.get(key);
+        if (value != null && invalidations.get() == invalidationsBeforeRead) {
+            values.put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        invalidations.incrementAndGet();
+        values.invalidateAll();
+    }
+
+    void invalidate(Object key) {
+        invalidations.incrementAndGet();
+        values.invalidate(key);
+    }
+
+    CacheStats stats() {
+        return values.stats();
+    }
+
+    long heldValues() {
+        return values.size();
+    }
+}
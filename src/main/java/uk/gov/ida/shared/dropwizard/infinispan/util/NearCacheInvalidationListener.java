@@ -0,0 +1,27 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
+
+import java.util.function.Consumer;
+
+/**
+ * Clustered, so that a node hears about changes to entries it does not own.
+ */
+@Listener(clustered = true)
+public class NearCacheInvalidationListener {
+
+    private final Consumer<Object> invalidator;
+
+    NearCacheInvalidationListener(Consumer<Object> invalidator) {
+        this.invalidator = invalidator;
+    }
+
+    @CacheEntryModified
+    @CacheEntryRemoved
+    public void onEntryChanged(CacheEntryEvent<?, ?> event) {
+        invalidator.accept(event.getKey());
+    }
+}
@@ -0,0 +1,43 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import org.infinispan.Cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static uk.gov.ida.shared.dropwizard.infinispan.util.NotifyingFutures.toCompletableFuture;
+
+/**
+ * Exposes a cache's asynchronous operations as {@link CompletableFuture}s, so request threads
+ * do not wait on replication. Futures are completed on the supplied executor.
+ */
+public class NonBlockingCache<K, V> {
+
+    private final Cache<K, V> cache;
+    private final Executor executor;
+
+    NonBlockingCache(Cache<K, V> cache, Executor executor) {
+        this.cache = cache;
+        this.executor = executor;
+    }
+
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    public CompletableFuture<V> get(K key) {
+        return toCompletableFuture(cache.getAsync(key), executor);
+    }
+
+    public CompletableFuture<V> put(K key, V value) {
+        return toCompletableFuture(cache.putAsync(key, value), executor);
+    }
+
+    public CompletableFuture<V> putIfAbsent(K key, V value) {
+        return toCompletableFuture(cache.putIfAbsentAsync(key, value), executor);
+    }
+
+    public CompletableFuture<V> remove(K key) {
+        return toCompletableFuture(cache.removeAsync(key), executor);
+    }
+}
@@ -0,0 +1,40 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import org.infinispan.commons.util.concurrent.NotifyingFuture;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+final class NotifyingFutures {
+
+    private NotifyingFutures() {
+    }
+
+    static <T> CompletableFuture<T> toCompletableFuture(NotifyingFuture<T> notifyingFuture) {
+        CompletableFuture<T> completableFuture = new CompletableFuture<>();
+        notifyingFuture.attachListener(future -> complete(completableFuture, future));
+        return completableFuture;
+    }
+
+    /**
+     * Completes the returned future on {@code executor} rather than on the Infinispan thread
+     * which finished the operation, so dependent stages cannot stall Infinispan's pools.
+     */
+    static <T> CompletableFuture<T> toCompletableFuture(NotifyingFuture<T> notifyingFuture, Executor executor) {
+        CompletableFuture<T> completableFuture = new CompletableFuture<>();
+        notifyingFuture.attachListener(future -> executor.execute(() -> complete(completableFuture, future)));
+        return completableFuture;
+    }
+
+    private static <T> void complete(CompletableFuture<T> completableFuture, Future<T> future) {
+        try {
+            completableFuture.complete(future.get());
+        } catch (ExecutionException e) {
+            completableFuture.completeExceptionally(e.getCause());
+        } catch (Exception e) {
+            completableFuture.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.infinispan.commands.read.GetCacheEntryCommand;
+import org.infinispan.commands.read.GetKeyValueCommand;
+import org.infinispan.commands.write.PutKeyValueCommand;
+import org.infinispan.commands.write.PutMapCommand;
+import org.infinispan.commands.write.RemoveCommand;
+import org.infinispan.context.InvocationContext;
+import org.infinispan.distribution.DistributionManager;
+import org.infinispan.interceptors.base.BaseCustomInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every get, put, remove and putAll issued on this node.
+ * <p/>
+ * Reads are split into hits and misses, and single key operations into keys owned by this
+ * node and keys owned elsewhere in the cluster. All timers are resolved up front so the
+ * hot path only reads the clock and updates a timer. Commands received from other nodes
+ * are not timed; they are already counted by the node which issued them.
+ */
+class OperationTimerInterceptor extends BaseCustomInterceptor {
+
+    private final Timer getHitLocal;
+    private final Timer getHitRemote;
+    private final Timer getMissLocal;
+    private final Timer getMissRemote;
+    private final Timer putLocal;
+    private final Timer putRemote;
+    private final Timer removeLocal;
+    private final Timer removeRemote;
+    private final Timer putAll;
+
+    private DistributionManager distributionManager;
+
+    /**
+     * @param metricName the name the timers' names start with, for example {@code uk.gov.ida.infinispan.sessions}
+     */
+    OperationTimerInterceptor(MetricRegistry registry, String metricName) {
+        this.getHitLocal = timer(registry, metricName, "get", "hit", "local");
+        this.getHitRemote = timer(registry, metricName, "get", "hit", "remote");
+        this.getMissLocal = timer(registry, metricName, "get", "miss", "local");
+        this.getMissRemote = timer(registry, metricName, "get", "miss", "remote");
+        this.putLocal = timer(registry, metricName, "put", "local");
+        this.putRemote = timer(registry, metricName, "put", "remote");
+        this.removeLocal = timer(registry, metricName, "remove", "local");
+        this.removeRemote = timer(registry, metricName, "remove", "remote");
+        this.putAll = timer(registry, metricName, "putAll");
+    }
+
+    @Override
+    protected void start() {
+        distributionManager = cache.getAdvancedCache().getDistributionManager();
+    }
+
+    @Override
+    public Object visitGetKeyValueCommand(InvocationContext ctx, GetKeyValueCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        long start = System.nanoTime();
+        Object value = invokeNextInterceptor(ctx, command);
+        recordGet(value != null, command.getKey(), start);
+        return value;
+    }
+
+    @Override
+    public Object visitGetCacheEntryCommand(InvocationContext ctx, GetCacheEntryCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        long start = System.nanoTime();
+        Object entry = invokeNextInterceptor(ctx, command);
+        recordGet(entry != null, command.getKey(), start);
+        return entry;
+    }
+
+    @Override
+    public Object visitPutKeyValueCommand(InvocationContext ctx, PutKeyValueCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        long start = System.nanoTime();
+        try {
+            return invokeNextInterceptor(ctx, command);
+        } finally {
+            record(isLocal(command.getKey()) ? putLocal : putRemote, start);
+        }
+    }
+
+    @Override
+    public Object visitRemoveCommand(InvocationContext ctx, RemoveCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        long start = System.nanoTime();
+        try {
+            return invokeNextInterceptor(ctx, command);
+        } finally {
+            record(isLocal(command.getKey()) ? removeLocal : removeRemote, start);
+        }
+    }
+
+    @Override
+    public Object visitPutMapCommand(InvocationContext ctx, PutMapCommand command) throws Throwable {
+        if (!ctx.isOriginLocal()) {
+            return invokeNextInterceptor(ctx, command);
+        }
+        long start = System.nanoTime();
+        try {
+            return invokeNextInterceptor(ctx, command);
+        } finally {
+            record(putAll, start);
+        }
+    }
+
+    private void recordGet(boolean hit, Object key, long start) {
+        boolean local = isLocal(key);
+        if (hit) {
+            record(local ? getHitLocal : getHitRemote, start);
+        } else {
+            record(local ? getMissLocal : getMissRemote, start);
+        }
+    }
+
+    private boolean isLocal(Object key) {
+        return distributionManager == null || distributionManager.getLocality(key).isLocal();
+    }
+
+    private static void record(Timer timer, long start) {
+        timer.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static Timer timer(MetricRegistry registry, String metricName, String... names) {
+        return registry.timer(MetricRegistry.name(metricName, names));
+    }
+}
@@ -0,0 +1,34 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Counter;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryActivated;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryPassivated;
+import org.infinispan.notifications.cachelistener.event.CacheEntryActivatedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryPassivatedEvent;
+
+@Listener
+public class PassivationCounterListener {
+
+    private final Counter activations;
+    private final Counter passivations;
+
+    public PassivationCounterListener(Counter activations, Counter passivations) {
+        this.activations = activations;
+        this.passivations = passivations;
+    }
+
+    @CacheEntryActivated
+    public void onEntryActivated(CacheEntryActivatedEvent<?, ?> event) {
+        if (!event.isPre()) {
+            activations.inc();
+        }
+    }
+
+    @CacheEntryPassivated
+    public void onEntryPassivated(CacheEntryPassivatedEvent<?, ?> event) {
+        if (!event.isPre()) {
+            passivations.inc();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far the startup preload of persisted entries has got.
+ */
+public class PreloadProgress {
+
+    private final AtomicLong entriesLoaded = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long completedNanos;
+    private volatile boolean completed = false;
+
+    void entryLoaded() {
+        entriesLoaded.incrementAndGet();
+    }
+
+    void complete() {
+        completedNanos = System.nanoTime();
+        completed = true;
+    }
+
+    public boolean isComplete() {
+        return completed;
+    }
+
+    public long getEntriesLoaded() {
+        return entriesLoaded.get();
+    }
+
+    public long getElapsedMillis() {
+        long endNanos = isComplete() ? completedNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos);
+    }
+}
@@ -0,0 +1,134 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Optional;
+import org.infinispan.AdvancedCache;
+import org.infinispan.distribution.ch.ConsistentHash;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.DataRehashed;
+import org.infinispan.notifications.cachelistener.annotation.TopologyChanged;
+import org.infinispan.notifications.cachelistener.event.DataRehashedEvent;
+import org.infinispan.notifications.cachelistener.event.TopologyChangedEvent;
+import org.infinispan.remoting.transport.Address;
+import org.infinispan.statetransfer.StateTransferManager;
+import org.infinispan.topology.CacheTopology;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static uk.gov.ida.shared.dropwizard.infinispan.util.ClusterViewListener.names;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TopologyEvent.Type.rebalanceEnd;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TopologyEvent.Type.rebalanceStart;
+
+/**
+ * Times the rebalances of a clustered cache and counts the entries each one brought to this node,
+ * that is the entries held at the end of the rebalance in segments this node did not own at its start.
+ * <p/>
+ * The rebalance which brings a joining node its initial state usually finishes before the cache
+ * has started and the listener can be added, so {@link #cacheStarted(long)} reports it instead.
+ * <p/>
+ * Counting the entries received walks the data container, so notifications are delivered
+ * asynchronously to keep that off the thread installing the new topology. Durations are measured
+ * on delivery and so include any time the notifications spend queued.
+ */
+@Listener(sync = false)
+public class RebalanceListener {
+
+    private final AdvancedCache<?, ?> cache;
+    private final Meter topologyChanges;
+    private final Timer rebalanceDuration;
+    private final Histogram rebalanceEntriesReceived;
+    private final TopologyHistory history;
+    private final AtomicLong rebalanceStartNanos = new AtomicLong();
+
+    RebalanceListener(AdvancedCache<?, ?> cache, Meter topologyChanges, Timer rebalanceDuration, Histogram rebalanceEntriesReceived, TopologyHistory history) {
+        this.cache = cache;
+        this.topologyChanges = topologyChanges;
+        this.rebalanceDuration = rebalanceDuration;
+        this.rebalanceEntriesReceived = rebalanceEntriesReceived;
+        this.history = history;
+    }
+
+    /**
+     * Call once the listener has been added to a cache this node has just started.
+     *
+     * @param startNanos when this node started the cache
+     */
+    void cacheStarted(long startNanos) {
+        rebalanceStartNanos.compareAndSet(0, startNanos);
+        StateTransferManager stateTransferManager = cache.getComponentRegistry().getStateTransferManager();
+        if (stateTransferManager == null || stateTransferManager.isStateTransferInProgress()) {
+            // the end of the rebalance will be reported as usual
+            return;
+        }
+        long initialStartNanos = rebalanceStartNanos.getAndSet(0);
+        CacheTopology cacheTopology = stateTransferManager.getCacheTopology();
+        if (initialStartNanos == 0 || cacheTopology.getMembers().size() == 1) {
+            // either already reported, or this node is the only member so nothing was transferred
+            return;
+        }
+        rebalanceEnded(cacheTopology.getTopologyId(), cacheTopology.getMembers(), initialStartNanos, cache.getDataContainer().size());
+    }
+
+    @TopologyChanged
+    public void onTopologyChanged(TopologyChangedEvent<?, ?> event) {
+        if (!event.isPre()) {
+            topologyChanges.mark();
+        }
+    }
+
+    @DataRehashed
+    public void onDataRehashed(DataRehashedEvent<?, ?> event) {
+        if (event.isPre()) {
+            rebalanceStartNanos.set(System.nanoTime());
+            history.add(new TopologyEvent(rebalanceStart, Optional.of(cache.getName()), event.getNewTopologyId(),
+                    names(new ArrayList<>(event.getMembersAtEnd())), Optional.absent(), Optional.absent()));
+            return;
+        }
+        long startNanos = rebalanceStartNanos.getAndSet(0);
+        if (startNanos == 0) {
+            // the start was missed, or the end was already reported by cacheStarted
+            return;
+        }
+        rebalanceEnded(event.getNewTopologyId(), new ArrayList<>(event.getMembersAtEnd()), startNanos,
+                entriesReceived(event.getConsistentHashAtStart(), event.getConsistentHashAtEnd()));
+    }
+
+    private void rebalanceEnded(int topologyId, List<Address> members, long startNanos, int entriesReceived) {
+        long durationNanos = System.nanoTime() - startNanos;
+        rebalanceDuration.update(durationNanos, TimeUnit.NANOSECONDS);
+        rebalanceEntriesReceived.update(entriesReceived);
+        history.add(new TopologyEvent(rebalanceEnd, Optional.of(cache.getName()), topologyId,
+                names(members), Optional.of(TimeUnit.NANOSECONDS.toMillis(durationNanos)), Optional.of(entriesReceived)));
+    }
+
+    private int entriesReceived(ConsistentHash start, ConsistentHash end) {
+        Address self = cache.getRpcManager().getAddress();
+        Set<Integer> gainedSegments = new HashSet<>(segmentsOwned(end, self));
+        gainedSegments.removeAll(segmentsOwned(start, self));
+        if (gainedSegments.isEmpty()) {
+            return 0;
+        }
+        int entries = 0;
+        for (Object key : cache.getDataContainer().keySet()) {
+            if (gainedSegments.contains(end.getSegment(key))) {
+                entries++;
+            }
+        }
+        return entries;
+    }
+
+    private static Set<Integer> segmentsOwned(ConsistentHash consistentHash, Address address) {
+        if (consistentHash == null || !consistentHash.getMembers().contains(address)) {
+            return Collections.emptySet();
+        }
+        return consistentHash.getSegmentsForOwner(address);
+    }
+}
@@ -0,0 +1,64 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.Timer;
+import org.infinispan.container.entries.CacheEntry;
+import org.infinispan.container.entries.InternalCacheEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Schedules background reloads of a loading cache's entries which are close to expiring.
+ * <p/>
+ * At most one refresh per key is queued at a time. When the executor's queue is full the
+ * refresh is dropped and the entry is loaded again as normal once it expires.
+ */
+class RefreshAhead {
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshAhead.class);
+
+    private final Executor executor;
+    private final long windowMillis;
+    private final Meter refreshes;
+    private final Timer refreshLatency;
+    private final Set<Object> refreshesInFlight = ConcurrentHashMap.newKeySet();
+
+    RefreshAhead(Executor executor, long windowMillis, Meter refreshes, Timer refreshLatency) {
+        this.executor = executor;
+        this.windowMillis = windowMillis;
+        this.refreshes = refreshes;
+        this.refreshLatency = refreshLatency;
+    }
+
+    boolean isDue(CacheEntry<?, ?> entry) {
+        if (!(entry instanceof InternalCacheEntry)) {
+            return false;
+        }
+        long expiryTime = ((InternalCacheEntry) entry).getExpiryTime();
+        return expiryTime > 0 && System.currentTimeMillis() >= expiryTime - windowMillis;
+    }
+
+    void refresh(Object key, Runnable reload) {
+        if (!refreshesInFlight.add(key)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try (Timer.Context ignored = refreshLatency.time()) {
+                    reload.run();
+                    refreshes.mark();
+                } catch (RuntimeException e) {
+                    LOG.warn("Refreshing a cache entry ahead of expiry failed, it will be loaded again when it expires", e);
+                } finally {
+                    refreshesInFlight.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            refreshesInFlight.remove(key);
+        }
+    }
+}
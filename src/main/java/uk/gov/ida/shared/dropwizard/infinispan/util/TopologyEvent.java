@@ -0,0 +1,68 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.base.Optional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * A change to the cluster view or to the topology of a cache, as listed on the details endpoint.
+ */
+public class TopologyEvent {
+
+    public enum Type {
+        viewChange, merge, rebalanceStart, rebalanceEnd
+    }
+
+    private final Instant time;
+    private final Type type;
+    private final Optional<String> cacheName;
+    private final int id;
+    private final List<String> members;
+    private final Optional<Long> durationMillis;
+    private final Optional<Integer> entriesReceived;
+
+    TopologyEvent(Type type, Optional<String> cacheName, int id, List<String> members, Optional<Long> durationMillis, Optional<Integer> entriesReceived) {
+        this.time = Instant.now();
+        this.type = type;
+        this.cacheName = cacheName;
+        this.id = id;
+        this.members = members;
+        this.durationMillis = durationMillis;
+        this.entriesReceived = entriesReceived;
+    }
+
+    public String getTime() {
+        return time.toString();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the cache whose topology changed, or absent for a change to the cluster view
+     */
+    public Optional<String> getCacheName() {
+        return cacheName;
+    }
+
+    /**
+     * @return the view id for view changes and merges, otherwise the cache topology id
+     */
+    public int getId() {
+        return id;
+    }
+
+    public List<String> getMembers() {
+        return members;
+    }
+
+    public Optional<Long> getDurationMillis() {
+        return durationMillis;
+    }
+
+    public Optional<Integer> getEntriesReceived() {
+        return entriesReceived;
+    }
+}
@@ -0,0 +1,32 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the most recent topology events, dropping the oldest once full.
+ */
+class TopologyHistory {
+
+    private final int capacity;
+    private final Deque<TopologyEvent> events;
+
+    TopologyHistory(int capacity) {
+        this.capacity = capacity;
+        this.events = new ArrayDeque<>(capacity);
+    }
+
+    synchronized void add(TopologyEvent event) {
+        if (events.size() == capacity) {
+            events.removeFirst();
+        }
+        events.addLast(event);
+    }
+
+    synchronized List<TopologyEvent> getEvents() {
+        return ImmutableList.copyOf(events);
+    }
+}
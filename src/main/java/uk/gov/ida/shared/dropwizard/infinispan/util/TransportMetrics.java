@@ -0,0 +1,92 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import org.jgroups.Channel;
+import org.jgroups.protocols.FRAG2;
+import org.jgroups.protocols.MFC;
+import org.jgroups.protocols.TP;
+import org.jgroups.protocols.UNICAST2;
+import org.jgroups.protocols.pbcast.NAKACK2;
+import org.jgroups.stack.ProtocolStack;
+import org.jgroups.util.Util;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Registers gauges for the counters of the JGroups protocols that replication latency usually comes
+ * down to: bytes and messages on the wire, thread pool saturation, retransmissions, flow control
+ * blocking and fragmentation. Gauges call the protocols' getters directly rather than going through JMX.
+ */
+class TransportMetrics {
+
+    private final MetricRegistry registry;
+    private final String prefix;
+
+    private TransportMetrics(MetricRegistry registry, String metricPrefix) {
+        this.registry = registry;
+        this.prefix = MetricRegistry.name(metricPrefix, "transport");
+    }
+
+    static void register(MetricRegistry registry, String metricPrefix, Channel channel) {
+        new TransportMetrics(registry, metricPrefix).register(channel.getProtocolStack());
+    }
+
+    private void register(ProtocolStack stack) {
+        TP tp = stack.getTransport();
+        gauge("messagesSent", tp::getNumMessagesSent);
+        gauge("messagesReceived", tp::getNumMessagesReceived);
+        gauge("bytesSent", tp::getNumBytesSent);
+        gauge("bytesReceived", tp::getNumBytesReceived);
+        gauge("threadPool.size", tp::getRegularPoolSize);
+        gauge("threadPool.active", tp::getRegularPoolSizeActive);
+        gauge("threadPool.queueSize", tp::getRegularQueueSize);
+        gauge("oobThreadPool.size", tp::getOOBPoolSize);
+        gauge("oobThreadPool.active", tp::getOOBPoolSizeActive);
+        gauge("oobThreadPool.queueSize", tp::getOOBQueueSize);
+
+        NAKACK2 nakack2 = (NAKACK2) stack.findProtocol(NAKACK2.class);
+        if (nakack2 != null) {
+            gauge("nakack2.xmitRequestsSent", nakack2::getXmitRequestsSent);
+            gauge("nakack2.xmitRequestsReceived", nakack2::getXmitRequestsReceived);
+            gauge("nakack2.missingMessages", nakack2::getXmitTableMissingMessages);
+        }
+
+        UNICAST2 unicast2 = (UNICAST2) stack.findProtocol(UNICAST2.class);
+        if (unicast2 != null) {
+            // UNICAST2 keeps its retransmission counters in fields without getters
+            gauge("unicast2.xmitRequestsSent", counterField(unicast2, "xmit_reqs_sent")::get);
+            gauge("unicast2.xmitRequestsReceived", counterField(unicast2, "xmit_reqs_received")::get);
+            gauge("unicast2.missingMessages", unicast2::getXmitTableMissingMessages);
+        }
+
+        MFC mfc = (MFC) stack.findProtocol(MFC.class);
+        if (mfc != null) {
+            gauge("mfc.blockings", mfc::getNumberOfBlockings);
+            gauge("mfc.averageTimeBlocked", mfc::getAverageTimeBlocked);
+        }
+
+        FRAG2 frag2 = (FRAG2) stack.findProtocol(FRAG2.class);
+        if (frag2 != null) {
+            gauge("frag2.fragmentsSent", frag2::getNumberOfSentFragments);
+            gauge("frag2.fragmentsReceived", frag2::getNumberOfReceivedFragments);
+        }
+    }
+
+    private <T> void gauge(String name, Supplier<T> value) {
+        registry.register(MetricRegistry.name(prefix, name), (Gauge<T>) value::get);
+    }
+
+    private static AtomicLong counterField(Object protocol, String name) {
+        Field field = Util.getField(protocol.getClass(), name);
+        field.setAccessible(true);
+        try {
+            return (AtomicLong) field.get(protocol);
+        } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package uk.gov.ida.shared.dropwizard.infinispan.config;
+
+import io.dropwizard.configuration.ConfigurationException;
+import io.dropwizard.configuration.YamlConfigurationFactory;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+public final class InfinispanConfigurationFixtures {
+
+    private InfinispanConfigurationFixtures() {
+    }
+
+    /**
+     * Parses and validates an {@code infinispan} configuration block as the application would.
+     */
+    public static InfinispanConfiguration fromYaml(String yaml) throws IOException, ConfigurationException {
+        YamlConfigurationFactory<InfinispanConfiguration> factory = new YamlConfigurationFactory<>(
+                InfinispanConfiguration.class, Validators.newValidator(), Jackson.newObjectMapper(), "infinispan");
+        return factory.build(path -> new ByteArrayInputStream(yaml.getBytes(StandardCharsets.UTF_8)), "");
+    }
+}
@@ -5,6 +5,10 @@ import io.dropwizard.configuration.ConfigurationFactory;
 import io.dropwizard.configuration.ConfigurationSourceProvider;
 import io.dropwizard.configuration.DefaultConfigurationFactoryFactory;
 import io.dropwizard.jackson.Jackson;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionThreadPolicy;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -20,6 +24,7 @@ import java.util.Set;
 import static com.google.common.base.Optional.absent;
 import static com.google.common.base.Optional.of;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static uk.gov.ida.shared.dropwizard.infinispan.config.CacheType.clustered;
 
 public class InfinispanConfigurationTest {
@@ -155,6 +160,387 @@ public class InfinispanConfigurationTest {
         assertThat(infinispanConfiguration.isValid()).isEqualTo(false);
     }
 
+    @Test
+    public void shouldLoadNamedCacheConfigurations() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: insecure\n" +
+                "clusterName: cluster\n" +
+                "bindAddress: 127.0.0.1\n" +
+                "initialHosts: localhost[7800]\n" +
+                "operationTimers: true\n" +
+                "maxIdle: 10m\n" +
+                "reaperInterval: 30s\n" +
+                "caches:\n" +
+                "  sessions:\n" +
+                "    mode: distributed\n" +
+                "    numOwners: 2\n" +
+                "    maxIdle: 1m\n" +
+                "    reaperInterval: 5s\n" +
+                "    l1:\n" +
+                "      lifespan: 5m\n" +
+                "      invalidationThreshold: 2\n" +
+                "    nearCache:\n" +
+                "      maxEntries: 500\n" +
+                "  reference-data:\n" +
+                "    mode: replicated\n" +
+                "    operationTimers: false\n"
+        );
+
+        assertThat(infinispanConfiguration.getCaches()).containsOnlyKeys("sessions", "reference-data");
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getMode()).isEqualTo(of(ClusteringMode.distributed));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getNumOwners()).isEqualTo(of(2));
+        assertThat(infinispanConfiguration.getCaches().get("reference-data").getNumOwners()).isEqualTo(absent());
+        assertThat(infinispanConfiguration.getOperationTimers()).isTrue();
+        assertThat(infinispanConfiguration.getMaxIdle()).isEqualTo(of(Duration.minutes(10)));
+        assertThat(infinispanConfiguration.getReaperInterval()).isEqualTo(of(Duration.seconds(30)));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getMaxIdle()).isEqualTo(of(Duration.minutes(1)));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getReaperInterval()).isEqualTo(of(Duration.seconds(5)));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getL1().get().getLifespan()).isEqualTo(Duration.minutes(5));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getL1().get().getInvalidationThreshold()).isEqualTo(2);
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getNearCache().get().getMaxEntries()).isEqualTo(500);
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getNearCache().get().getLifespan()).isEqualTo(Duration.minutes(1));
+        assertThat(infinispanConfiguration.getCaches().get("sessions").getOperationTimers()).isEqualTo(absent());
+        assertThat(infinispanConfiguration.getCaches().get("reference-data").getOperationTimers()).isEqualTo(of(false));
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfStandaloneConfigurationHasClusteredCache() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "caches:\n" +
+                    "  sessions:\n" +
+                    "    mode: distributed\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("standalone caches can only use local mode");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfL1IsSetForReplicatedCache() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: insecure\n" +
+                    "clusterName: cluster\n" +
+                    "bindAddress: 127.0.0.1\n" +
+                    "initialHosts: localhost[7800]\n" +
+                    "caches:\n" +
+                    "  reference-data:\n" +
+                    "    mode: replicated\n" +
+                    "    l1:\n" +
+                    "      lifespan: 1m\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("l1 can only be set for distributed caches");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfNearCacheIsSetForInvalidationCache() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: insecure\n" +
+                    "clusterName: cluster\n" +
+                    "bindAddress: 127.0.0.1\n" +
+                    "initialHosts: localhost[7800]\n" +
+                    "caches:\n" +
+                    "  reference-data:\n" +
+                    "    mode: invalidation\n" +
+                    "    nearCache:\n" +
+                    "      maxEntries: 100\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("nearCache cannot be used with invalidation caches");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfNumOwnersIsSetForReplicatedCache() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: insecure\n" +
+                    "clusterName: cluster\n" +
+                    "bindAddress: 127.0.0.1\n" +
+                    "initialHosts: localhost[7800]\n" +
+                    "caches:\n" +
+                    "  reference-data:\n" +
+                    "    mode: replicated\n" +
+                    "    numOwners: 2\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("numOwners must be positive and can only be set for distributed caches");
+        }
+    }
+
+    @Test
+    public void shouldLoadReplicationQueueConfiguration() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "asyncReplication: true\n" +
+                "replicationQueue:\n" +
+                "  maxElements: 500\n" +
+                "  flushInterval: 50ms\n"
+        );
+
+        assertThat(infinispanConfiguration.getAsyncReplication()).isTrue();
+        assertThat(infinispanConfiguration.getReplicationQueue().get().getMaxElements()).isEqualTo(500);
+        assertThat(infinispanConfiguration.getReplicationQueue().get().getFlushInterval()).isEqualTo(Duration.milliseconds(50));
+    }
+
+    @Test
+    public void shouldLoadHealthProbeConfigurationWithDefaults() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "healthProbe:\n" +
+                "  p99Threshold: 200ms\n"
+        );
+
+        HealthProbeConfiguration healthProbe = infinispanConfiguration.getHealthProbe().get();
+        assertThat(healthProbe.getCacheName()).isEqualTo("healthProbe");
+        assertThat(healthProbe.getInterval()).isEqualTo(Duration.seconds(10));
+        assertThat(healthProbe.getWindow()).isEqualTo(30);
+        assertThat(healthProbe.getP50Threshold()).isEqualTo(Duration.milliseconds(50));
+        assertThat(healthProbe.getP99Threshold()).isEqualTo(Duration.milliseconds(200));
+    }
+
+    @Test
+    public void shouldLoadCompressionConfigurationWithDefaults() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "compression:\n" +
+                "  codec: gzip\n"
+        );
+
+        CompressionConfiguration compression = infinispanConfiguration.getCompression().get();
+        assertThat(compression.getCodec()).isEqualTo(CompressionCodec.gzip);
+        assertThat(compression.getLevel()).isEqualTo(6);
+        assertThat(compression.getThreshold()).isEqualTo(Size.kilobytes(4));
+    }
+
+    @Test
+    public void shouldLoadHotKeysConfigurationWithDefaults() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "hotKeys:\n" +
+                "  sampleRate: 0.1\n"
+        );
+
+        HotKeysConfiguration hotKeys = infinispanConfiguration.getHotKeys().get();
+        assertThat(hotKeys.getSampleRate()).isEqualTo(0.1);
+        assertThat(hotKeys.getTopKeys()).isEqualTo(10);
+        assertThat(hotKeys.getWindow()).isEqualTo(Duration.minutes(1));
+        assertThat(hotKeys.getWidth()).isEqualTo(1024);
+        assertThat(hotKeys.getDepth()).isEqualTo(4);
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfReplicationQueueIsConfiguredWithoutAsyncReplication() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "replicationQueue:\n" +
+                    "  maxElements: 500\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("asyncReplication must be enabled");
+        }
+    }
+
+    @Test
+    public void shouldLoadTransportConfiguration() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "transport:\n" +
+                "  oobThreadPool:\n" +
+                "    minThreads: 4\n" +
+                "    maxThreads: 60\n" +
+                "    keepAliveTime: 30s\n" +
+                "    queueEnabled: false\n" +
+                "    queueMaxSize: 1\n" +
+                "  maxBundleSize: 128000\n" +
+                "  maxCredits: 400000\n"
+        );
+
+        TransportConfiguration transport = infinispanConfiguration.getTransport();
+        assertThat(transport.getOobThreadPool().getMaxThreads()).isEqualTo(60);
+        assertThat(transport.getOobThreadPool().getKeepAliveTime()).isEqualTo(Duration.seconds(30));
+        assertThat(transport.getOobThreadPool().getQueueEnabled()).isFalse();
+        assertThat(transport.getMaxBundleSize()).isEqualTo(128000);
+        assertThat(transport.getMaxCredits()).isEqualTo(400000);
+        assertThat(transport.getThreadPool().getMaxThreads()).isEqualTo(30);
+        assertThat(transport.getFragSize()).isEqualTo(60000);
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfFragmentsAreNotSmallerThanBundles() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "transport:\n" +
+                    "  maxBundleSize: 60000\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("fragSize must be smaller than maxBundleSize");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfThreadPoolMaxThreadsIsBelowMinThreads() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "transport:\n" +
+                    "  threadPool:\n" +
+                    "    minThreads: 10\n" +
+                    "    maxThreads: 5\n" +
+                    "    keepAliveTime: 1m\n" +
+                    "    queueEnabled: true\n" +
+                    "    queueMaxSize: 100\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("maxThreads must be at least minThreads");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfClusteredCacheManagersShareAPort() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: insecure\n" +
+                    "clusterName: cluster\n" +
+                    "bindAddress: 127.0.0.1\n" +
+                    "initialHosts: localhost[7800]\n" +
+                    "cacheManagers:\n" +
+                    "  bulk:\n" +
+                    "    type: insecure\n" +
+                    "    clusterName: bulk\n" +
+                    "    bindAddress: 127.0.0.1\n" +
+                    "    initialHosts: localhost[7800]\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("each clustered cache manager needs its own bind address and port");
+        }
+    }
+
+    @Test
+    public void shouldLoadEvictionConfiguration() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "eviction:\n" +
+                "  maxEntries: 10000\n" +
+                "caches:\n" +
+                "  sessions:\n" +
+                "    eviction:\n" +
+                "      maxEntries: 500\n" +
+                "      strategy: LIRS\n" +
+                "      threadPolicy: PIGGYBACK\n"
+        );
+
+        assertThat(infinispanConfiguration.getEviction().get().getMaxEntries()).isEqualTo(10000);
+        assertThat(infinispanConfiguration.getEviction().get().getStrategy()).isEqualTo(EvictionStrategy.LRU);
+        EvictionConfiguration sessionsEviction = infinispanConfiguration.getCaches().get("sessions").getEviction().get();
+        assertThat(sessionsEviction.getMaxEntries()).isEqualTo(500);
+        assertThat(sessionsEviction.getStrategy()).isEqualTo(EvictionStrategy.LIRS);
+        assertThat(sessionsEviction.getThreadPolicy()).isEqualTo(EvictionThreadPolicy.PIGGYBACK);
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfEvictionStrategyIsNotLruOrLirs() throws IOException {
+        try {
+            // Dropwizard's validator, which cascades into Optional values as the application does
+            InfinispanConfigurationFixtures.fromYaml(
+                    "type: standalone\n" +
+                    "caches:\n" +
+                    "  sessions:\n" +
+                    "    eviction:\n" +
+                    "      maxEntries: 500\n" +
+                    "      strategy: FIFO\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("strategy must be LRU or LIRS");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfRefreshAheadIsEnabledWithoutExpiration() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "refreshAhead:\n" +
+                    "  window: 1m\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("expiration must be set");
+        }
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfPassivationIsEnabledWithoutPersistence() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "passivation: true\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("persistenceToFileEnabled must be set");
+        }
+    }
+
+    @Test
+    public void shouldDefaultToSingleFilePersistenceStore() throws IOException, ConfigurationException {
+        InfinispanConfiguration singleFile = loadConfigurationFromYaml("type: standalone\n");
+        InfinispanConfiguration levelDb = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "persistenceStore: levelDb\n"
+        );
+
+        assertThat(singleFile.getPersistenceStore()).isEqualTo(PersistenceStoreType.singleFile);
+        assertThat(levelDb.getPersistenceStore()).isEqualTo(PersistenceStoreType.levelDb);
+    }
+
+    @Test
+    public void shouldLoadWriteBehindConfiguration() throws IOException, ConfigurationException {
+        InfinispanConfiguration infinispanConfiguration = loadConfigurationFromYaml(
+                "type: standalone\n" +
+                "persistenceToFileEnabled: true\n" +
+                "persistenceFileLocation: bla/bla\n" +
+                "writeBehind:\n" +
+                "  threadPoolSize: 4\n"
+        );
+
+        WriteBehindConfiguration writeBehind = infinispanConfiguration.getWriteBehind().get();
+        assertThat(writeBehind.getThreadPoolSize()).isEqualTo(4);
+        assertThat(writeBehind.getModificationQueueSize()).isEqualTo(1024);
+        assertThat(writeBehind.getShutdownTimeout()).isEqualTo(Duration.seconds(25));
+    }
+
+    @Test
+    public void validator_shouldFailValidationIfExternalizerIsNotAnAdvancedExternalizer() throws IOException {
+        try {
+            loadConfigurationFromYaml(
+                    "type: standalone\n" +
+                    "externalizers:\n" +
+                    "  - uk.gov.ida.shared.dropwizard.infinispan.marshalling.UuidExternalizer\n" +
+                    "  - java.lang.String\n"
+            );
+            fail("expected configuration to be rejected");
+        } catch (ConfigurationException e) {
+            assertThat(e.getMessage()).contains("each must name an AdvancedExternalizer class");
+        }
+    }
+
     private static <T> Set<ConstraintViolation<T>> runValidations(T data) {
         ValidatorFactory factory = Validation.buildDefaultValidatorFactory();
         Validator validator = factory.getValidator();
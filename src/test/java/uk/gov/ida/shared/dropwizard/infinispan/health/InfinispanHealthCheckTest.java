@@ -0,0 +1,67 @@
+package uk.gov.ida.shared.dropwizard.infinispan.health;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Optional;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CacheType;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanServiceConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+import uk.gov.ida.shared.dropwizard.infinispan.util.PreloadProgress;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class InfinispanHealthCheckTest {
+
+    @Mock
+    private InfinispanServiceConfiguration configuration;
+    @Mock
+    private InfinispanConfiguration infinispanConfiguration;
+    @Mock
+    private InfinispanCacheManager infinispanCacheManager;
+    @Mock
+    private PreloadProgress preloadProgress;
+
+    private InfinispanHealthCheck healthCheck;
+
+    @Before
+    public void setUp() {
+        when(configuration.getInfinispan()).thenReturn(infinispanConfiguration);
+        when(infinispanConfiguration.getType()).thenReturn(CacheType.standalone);
+        healthCheck = new InfinispanHealthCheck(configuration, infinispanCacheManager);
+    }
+
+    @Test
+    public void shouldBeUnhealthyWhileWarming() {
+        when(infinispanCacheManager.getPreloadProgress()).thenReturn(Optional.of(preloadProgress));
+        when(preloadProgress.isComplete()).thenReturn(false);
+        when(preloadProgress.getEntriesLoaded()).thenReturn(42L);
+        when(preloadProgress.getElapsedMillis()).thenReturn(7L);
+
+        HealthCheck.Result result = healthCheck.execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("Infinispan is warming: 42 entries loaded in 7ms");
+    }
+
+    @Test
+    public void shouldBeHealthyOncePreloadIsComplete() {
+        when(infinispanCacheManager.getPreloadProgress()).thenReturn(Optional.of(preloadProgress));
+        when(preloadProgress.isComplete()).thenReturn(true);
+
+        assertThat(healthCheck.execute().isHealthy()).isTrue();
+    }
+
+    @Test
+    public void shouldBeHealthyWithoutPreload() {
+        when(infinispanCacheManager.getPreloadProgress()).thenReturn(Optional.absent());
+
+        assertThat(healthCheck.execute().isHealthy()).isTrue();
+    }
+}
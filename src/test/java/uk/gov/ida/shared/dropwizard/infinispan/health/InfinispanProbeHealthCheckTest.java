@@ -0,0 +1,105 @@
+package uk.gov.ida.shared.dropwizard.infinispan.health;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Optional;
+import io.dropwizard.util.Duration;
+import org.infinispan.configuration.cache.Configuration;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HealthProbeConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManager;
+import uk.gov.ida.shared.dropwizard.infinispan.util.InfinispanCacheManagerOptions;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InfinispanProbeHealthCheckTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @Before
+    public void setUp() {
+        infinispanCacheManager = new InfinispanCacheManager(new MetricRegistry(), new DefaultCacheManager(new ConfigurationBuilder().build()));
+        infinispanCacheManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        infinispanCacheManager.stop();
+    }
+
+    @Test
+    public void shouldBeUnhealthyUntilProbed() {
+        InfinispanProbeHealthCheck healthCheck = healthCheck(Duration.seconds(1), Duration.seconds(1));
+
+        HealthCheck.Result result = healthCheck.execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).isEqualTo("Infinispan has not been probed yet");
+    }
+
+    @Test
+    public void shouldReportRoundTripLatencyWhenWithinThresholds() {
+        InfinispanProbeHealthCheck healthCheck = healthCheck(Duration.seconds(1), Duration.seconds(1));
+
+        healthCheck.probe();
+        healthCheck.probe();
+        HealthCheck.Result result = healthCheck.execute();
+
+        assertThat(result.isHealthy()).isTrue();
+        assertThat(result.getMessage()).matches("Probe round trip p50 [0-9.]+ms, p99 [0-9.]+ms over 2 probes");
+        assertThat(infinispanCacheManager.getProbeCache("probe")).isEmpty();
+    }
+
+    @Test
+    public void shouldBeUnhealthyWhenRoundTripsAreSlowerThanTheThreshold() {
+        InfinispanProbeHealthCheck healthCheck = healthCheck(Duration.seconds(1), Duration.nanoseconds(1));
+
+        healthCheck.probe();
+        HealthCheck.Result result = healthCheck.execute();
+
+        assertThat(result.isHealthy()).isFalse();
+        assertThat(result.getMessage()).endsWith(": p99 is over 1 nanosecond");
+    }
+
+    @Test
+    public void shouldProbeACacheWithoutTheDefaultCachesStoreOrInstrumentation() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.jmxStatistics().enable();
+        configurationBuilder.persistence().addSingleFileStore().location(temporaryFolder.newFolder().getAbsolutePath());
+        MetricRegistry metricRegistry = new MetricRegistry();
+        InfinispanCacheManager instrumentedCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(), configurationBuilder.build()),
+                new InfinispanCacheManagerOptions()
+                        .operationTimers(true)
+                        .hotKeys(Optional.of(new HotKeysConfiguration(1, 10, Duration.minutes(1), 64, 4)))
+        );
+        instrumentedCacheManager.start();
+        try {
+            new InfinispanProbeHealthCheck(instrumentedCacheManager, new HealthProbeConfiguration("probe", Duration.seconds(10), 10, Duration.seconds(1), Duration.seconds(1))).probe();
+
+            Configuration probeConfiguration = instrumentedCacheManager.getProbeCache("probe").getCacheConfiguration();
+            assertThat(probeConfiguration.persistence().stores()).isEmpty();
+            assertThat(probeConfiguration.customInterceptors().interceptors()).isEmpty();
+            assertThat(metricRegistry.getNames()).noneMatch(name -> name.contains(".probe."));
+            assertThat(instrumentedCacheManager.getHotKeys()).doesNotContainKey("probe");
+        } finally {
+            instrumentedCacheManager.stop();
+        }
+    }
+
+    private InfinispanProbeHealthCheck healthCheck(Duration p50Threshold, Duration p99Threshold) {
+        return new InfinispanProbeHealthCheck(infinispanCacheManager, new HealthProbeConfiguration("probe", Duration.seconds(10), 10, p50Threshold, p99Threshold));
+    }
+}
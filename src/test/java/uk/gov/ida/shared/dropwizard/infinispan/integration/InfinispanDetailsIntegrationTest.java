@@ -4,10 +4,12 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.Application;
 import io.dropwizard.Configuration;
 import io.dropwizard.client.JerseyClientBuilder;
+import io.dropwizard.client.JerseyClientConfiguration;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
 import io.dropwizard.testing.ResourceHelpers;
 import io.dropwizard.testing.junit.DropwizardAppRule;
+import io.dropwizard.util.Duration;
 import org.junit.ClassRule;
 import org.junit.Test;
 import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
@@ -18,6 +20,7 @@ import javax.validation.constraints.NotNull;
 import javax.ws.rs.client.Client;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -55,6 +58,8 @@ public class InfinispanDetailsIntegrationTest {
         @JsonProperty @NotNull String coordinator;
         @JsonProperty @NotNull String status;
         @JsonProperty @NotNull List<String> cacheNames;
+        @JsonProperty @NotNull Map<String, Map<String, Object>> transport;
+        @JsonProperty @NotNull List<Map<String, Object>> topologyEvents;
     }
 
     @ClassRule
@@ -62,7 +67,10 @@ public class InfinispanDetailsIntegrationTest {
 
     @Test
     public void shouldDoSomething() throws Exception {
-        final Client client = new JerseyClientBuilder(appRule.getEnvironment()).build("test client");
+        JerseyClientConfiguration clientConfiguration = new JerseyClientConfiguration();
+        // the first request also starts Jersey, which can take longer than the default 500ms
+        clientConfiguration.setTimeout(Duration.seconds(10));
+        final Client client = new JerseyClientBuilder(appRule.getEnvironment()).using(clientConfiguration).build("test client");
         final javax.ws.rs.core.Response response = client.target(String.format("http://localhost:%d/infinispan/details/", appRule.getLocalPort())).request().get();
         final InfinispanDetailsResponse infinispanDetails = response.readEntity(InfinispanDetailsResponse.class);
         assertThat(infinispanDetails.address).isEqualTo("null");
@@ -73,5 +81,7 @@ public class InfinispanDetailsIntegrationTest {
         assertThat(infinispanDetails.coordinator).isEqualTo("null");
         assertThat(infinispanDetails.status).isEqualTo("INSTANTIATED");
         assertThat(infinispanDetails.cacheNames).isEqualTo(Collections.emptyList());
+        assertThat(infinispanDetails.transport).isEmpty();
+        assertThat(infinispanDetails.topologyEvents).isEmpty();
     }
 }
@@ -0,0 +1,68 @@
+package uk.gov.ida.shared.dropwizard.infinispan.marshalling;
+
+import org.infinispan.commons.marshall.StreamingMarshaller;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.factories.KnownComponentNames;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompactExternalizersTest {
+
+    private DefaultCacheManager defaultCacheManager;
+    private DefaultCacheManager externalizingCacheManager;
+
+    @Before
+    public void setUp() {
+        defaultCacheManager = new DefaultCacheManager(
+                new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(),
+                new ConfigurationBuilder().build()
+        );
+        GlobalConfigurationBuilder globalConfigurationBuilder = new GlobalConfigurationBuilder();
+        globalConfigurationBuilder.globalJmxStatistics().allowDuplicateDomains(true);
+        globalConfigurationBuilder.serialization()
+                .addAdvancedExternalizer(new UuidExternalizer())
+                .addAdvancedExternalizer(new InstantExternalizer());
+        externalizingCacheManager = new DefaultCacheManager(globalConfigurationBuilder.build(), new ConfigurationBuilder().build());
+    }
+
+    @After
+    public void tearDown() {
+        defaultCacheManager.stop();
+        externalizingCacheManager.stop();
+    }
+
+    @Test
+    public void shouldMarshallUuidIntoSmallerPayloadAndBack() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        byte[] defaultPayload = marshaller(defaultCacheManager).objectToByteBuffer(uuid);
+        byte[] compactPayload = marshaller(externalizingCacheManager).objectToByteBuffer(uuid);
+
+        assertThat(compactPayload.length).isLessThan(defaultPayload.length);
+        assertThat(marshaller(externalizingCacheManager).objectFromByteBuffer(compactPayload)).isEqualTo(uuid);
+    }
+
+    @Test
+    public void shouldMarshallInstantIntoSmallerPayloadAndBack() throws Exception {
+        Instant instant = Instant.now();
+
+        byte[] defaultPayload = marshaller(defaultCacheManager).objectToByteBuffer(instant);
+        byte[] compactPayload = marshaller(externalizingCacheManager).objectToByteBuffer(instant);
+
+        assertThat(compactPayload.length).isLessThan(defaultPayload.length);
+        assertThat(marshaller(externalizingCacheManager).objectFromByteBuffer(compactPayload)).isEqualTo(instant);
+    }
+
+    private StreamingMarshaller marshaller(DefaultCacheManager cacheManager) {
+        cacheManager.getCache();
+        return cacheManager.getGlobalComponentRegistry().getComponent(StreamingMarshaller.class, KnownComponentNames.GLOBAL_MARSHALLER);
+    }
+}
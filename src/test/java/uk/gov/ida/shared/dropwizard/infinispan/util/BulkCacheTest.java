@@ -0,0 +1,80 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.infinispan.AdvancedCache;
+import org.infinispan.Cache;
+import org.infinispan.commons.CacheException;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BulkCacheTest {
+
+    private MetricRegistry metricRegistry = new MetricRegistry();
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @Before
+    public void setUp() {
+        infinispanCacheManager = new InfinispanCacheManager(metricRegistry, new DefaultCacheManager(new ConfigurationBuilder().build()));
+        infinispanCacheManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        infinispanCacheManager.stop();
+    }
+
+    @Test
+    public void shouldPutAndGetAllEntries() throws Exception {
+        BulkCache<String, String> bulkCache = infinispanCacheManager.getBulkCache("bulk");
+
+        bulkCache.putAll(ImmutableMap.of("a", "1", "b", "2", "c", "3")).get(5, TimeUnit.SECONDS);
+        Map<String, String> found = bulkCache.getAll(ImmutableList.of("a", "c", "missing")).get(5, TimeUnit.SECONDS);
+
+        assertThat(found).containsOnly(entry("a", "1"), entry("c", "3"));
+        assertThat(bulkCache.getCache().get("b")).isEqualTo("2");
+    }
+
+    @Test
+    public void shouldRecordBatchSizeAndLatency() throws Exception {
+        BulkCache<String, String> bulkCache = infinispanCacheManager.getBulkCache("bulk");
+
+        bulkCache.putAll(ImmutableMap.of("a", "1", "b", "2")).get(5, TimeUnit.SECONDS);
+        bulkCache.getAll(ImmutableList.of("a", "b", "c")).get(5, TimeUnit.SECONDS);
+
+        assertThat(metricRegistry.histogram("uk.gov.ida.infinispan.bulk.bulkPutBatchSize").getSnapshot().getMax()).isEqualTo(2);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.bulk.bulkPutLatency").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.histogram("uk.gov.ida.infinispan.bulk.bulkGetBatchSize").getSnapshot().getMax()).isEqualTo(3);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.bulk.bulkGetLatency").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldFailTheFutureAndStopTheTimerWhenALocalReadFails() {
+        Cache<String, String> cache = mock(Cache.class);
+        when(cache.getAdvancedCache()).thenReturn(mock(AdvancedCache.class));
+        when(cache.get("broken")).thenThrow(new CacheException("broken"));
+        BulkCache<String, String> bulkCache = new BulkCache<>(cache,
+                metricRegistry.histogram("getBatchSize"), metricRegistry.timer("getLatency"),
+                metricRegistry.histogram("putBatchSize"), metricRegistry.timer("putLatency"));
+
+        CompletableFuture<Map<String, String>> found = bulkCache.getAll(ImmutableList.of("a", "broken"));
+
+        assertThatThrownBy(found::join).hasCauseInstanceOf(CacheException.class);
+        assertThat(metricRegistry.timer("getLatency").getCount()).isEqualTo(1);
+    }
+}
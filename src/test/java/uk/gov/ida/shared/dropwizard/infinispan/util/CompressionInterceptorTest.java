@@ -0,0 +1,103 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.base.Strings;
+import io.dropwizard.util.Size;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.persistence.file.SingleFileStore;
+import org.infinispan.persistence.manager.PersistenceManager;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionCodec;
+import uk.gov.ida.shared.dropwizard.infinispan.config.CompressionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.marshalling.CompressedValue;
+import uk.gov.ida.shared.dropwizard.infinispan.marshalling.CompressedValueExternalizer;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressionInterceptorTest {
+
+    private static final String LARGE_VALUE = Strings.repeat("a compressible value ", 500);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MetricRegistry metricRegistry = new MetricRegistry();
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @After
+    public void tearDown() {
+        infinispanCacheManager.stop();
+    }
+
+    @Test
+    public void shouldHoldLargeValuesCompressedAndReturnThemExpanded() {
+        infinispanCacheManager = compressingCacheManager(CompressionCodec.deflate, new ConfigurationBuilder());
+        Cache<String, String> cache = infinispanCacheManager.getCache("compressed");
+
+        cache.put("large", LARGE_VALUE);
+        cache.put("small", "small value");
+
+        assertThat(cache.get("large")).isEqualTo(LARGE_VALUE);
+        assertThat(cache.get("small")).isEqualTo("small value");
+        assertThat(storedValue("large")).isInstanceOf(CompressedValue.class);
+        assertThat(storedValue("small")).isEqualTo("small value");
+        assertThat(cache.getAdvancedCache().getCacheEntry("large").getValue()).isEqualTo(LARGE_VALUE);
+        assertThat((Double) metricRegistry.getGauges().get("uk.gov.ida.infinispan.compressed.compressionRatio").getValue()).isLessThan(0.1);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.compressed.compressCpuTime").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.compressed.decompressCpuTime").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldMatchCompressedValuesInConditionalOperations() {
+        infinispanCacheManager = compressingCacheManager(CompressionCodec.gzip, new ConfigurationBuilder());
+        Cache<String, String> cache = infinispanCacheManager.getCache("compressed");
+        cache.put("key", LARGE_VALUE);
+
+        assertThat(cache.putIfAbsent("key", "other")).isEqualTo(LARGE_VALUE);
+        assertThat(cache.replace("key", LARGE_VALUE, LARGE_VALUE + "!")).isTrue();
+        assertThat(cache.remove("key", LARGE_VALUE + "!")).isTrue();
+        assertThat(cache).isEmpty();
+    }
+
+    @Test
+    public void shouldStoreValuesCompressed() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.persistence().addSingleFileStore().location(temporaryFolder.newFolder().getAbsolutePath());
+        infinispanCacheManager = compressingCacheManager(CompressionCodec.deflate, configurationBuilder);
+        Cache<String, String> cache = infinispanCacheManager.getCache("compressed");
+        cache.put("key", LARGE_VALUE);
+
+        SingleFileStore store = getOnlyElement(cache.getAdvancedCache().getComponentRegistry()
+                .getComponent(PersistenceManager.class).getStores(SingleFileStore.class));
+        assertThat(store.load("key").getValue()).isInstanceOf(CompressedValue.class);
+        cache.getAdvancedCache().getDataContainer().clear();
+
+        assertThat(cache.get("key")).isEqualTo(LARGE_VALUE);
+    }
+
+    private Object storedValue(String key) {
+        Cache<String, Object> cache = infinispanCacheManager.getCache("compressed");
+        return cache.getAdvancedCache().getDataContainer().get(key).getValue();
+    }
+
+    private InfinispanCacheManager compressingCacheManager(CompressionCodec codec, ConfigurationBuilder configurationBuilder) {
+        GlobalConfigurationBuilder globalConfigurationBuilder = new GlobalConfigurationBuilder();
+        globalConfigurationBuilder.globalJmxStatistics().allowDuplicateDomains(true);
+        globalConfigurationBuilder.serialization().addAdvancedExternalizer(new CompressedValueExternalizer());
+        InfinispanCacheManager cacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(globalConfigurationBuilder.build(), configurationBuilder.build()),
+                new InfinispanCacheManagerOptions().compression(Optional.of(new CompressionConfiguration(codec, 6, Size.kilobytes(1))))
+        );
+        cacheManager.start();
+        return cacheManager;
+    }
+}
@@ -0,0 +1,67 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.base.Ticker;
+import io.dropwizard.util.Duration;
+import org.junit.Test;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.HotKeySampler.reportedKey;
+
+public class HotKeySamplerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final HotKeySampler sampler = new HotKeySampler(new HotKeysConfiguration(1, 2, Duration.seconds(10), 1024, 4), new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    });
+
+    @Test
+    public void getHotKeys_shouldKeepOnlyTheHottestKeysHottestFirst() {
+        access("warm", 3);
+        access("cold", 1);
+        access("hot", 5);
+        sampler.sampleWrite("written");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+
+        HotKeys hotKeys = sampler.getHotKeys();
+
+        assertThat(hotKeys.getWindowSeconds()).isEqualTo(2.0);
+        assertThat(hotKeys.getReads()).extracting(HotKeys.HotKey::getKey, HotKeys.HotKey::getCount, HotKeys.HotKey::getPerSecond)
+                .containsExactly(tuple(reportedKey("hot"), 5L, 2.5), tuple(reportedKey("warm"), 3L, 1.5));
+        assertThat(hotKeys.getWrites()).extracting(HotKeys.HotKey::getKey).containsExactly(reportedKey("written"));
+    }
+
+    @Test
+    public void getHotKeys_shouldReportTheLastCompleteWindow() {
+        access("first", 2);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        access("second", 4);
+
+        assertThat(sampler.getHotKeys().getReads()).extracting(HotKeys.HotKey::getKey, HotKeys.HotKey::getPerSecond)
+                .containsExactly(tuple(reportedKey("first"), 0.2));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(20));
+
+        assertThat(sampler.getHotKeys().getReads()).isEmpty();
+    }
+
+    @Test
+    public void reportedKey_shouldBeATruncatedSha256OfTheKeysStringForm() {
+        // printf 42 | sha256sum
+        assertThat(reportedKey(42)).isEqualTo("73475cb40a568e8d");
+        assertThat(reportedKey("42")).isEqualTo(reportedKey(42));
+    }
+
+    private void access(String key, int times) {
+        for (int i = 0; i < times; i++) {
+            sampler.sampleRead(key);
+        }
+    }
+}
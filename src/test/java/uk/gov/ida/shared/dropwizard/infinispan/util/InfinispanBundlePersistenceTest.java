@@ -0,0 +1,62 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+import org.infinispan.Cache;
+import org.infinispan.persistence.leveldb.configuration.LevelDBStoreConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+public class InfinispanBundlePersistenceTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void run_shouldKeepEntriesInLevelDbAcrossRestarts() throws Exception {
+        InfinispanConfiguration configuration = fromYaml(
+                "type: standalone\n" +
+                "persistenceToFileEnabled: true\n" +
+                "persistenceFileLocation: " + temporaryFolder.newFolder().getAbsolutePath() + "\n" +
+                "persistenceStore: levelDb\n"
+        );
+
+        InfinispanCacheManager writingCacheManager = start(configuration);
+        try {
+            Cache<Integer, String> cache = writingCacheManager.getCache("persisted");
+            assertThat(cache.getCacheConfiguration().persistence().stores())
+                    .hasSize(1)
+                    .allMatch(LevelDBStoreConfiguration.class::isInstance);
+            for (int i = 0; i < 100; i++) {
+                cache.put(i, "value " + i);
+            }
+        } finally {
+            writingCacheManager.stop();
+        }
+
+        InfinispanCacheManager readingCacheManager = start(configuration);
+        try {
+            Cache<Integer, String> cache = readingCacheManager.getCache("persisted");
+            assertThat(cache.get(42)).isEqualTo("value 42");
+            assertThat(cache.get(99)).isEqualTo("value 99");
+        } finally {
+            readingCacheManager.stop();
+        }
+    }
+
+    private InfinispanCacheManager start(InfinispanConfiguration configuration) {
+        InfinispanBundle bundle = new InfinispanBundle();
+        bundle.run(() -> configuration, new Environment(
+                "test", Jackson.newObjectMapper(), Validators.newValidator(), new MetricRegistry(), getClass().getClassLoader()));
+        InfinispanCacheManager cacheManager = bundle.getCacheManager();
+        cacheManager.start();
+        return cacheManager;
+    }
+}
@@ -0,0 +1,87 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.jersey.validation.Validators;
+import io.dropwizard.setup.Environment;
+import org.junit.After;
+import org.junit.Test;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+public class InfinispanBundleTest {
+
+    private final InfinispanBundle bundle = new InfinispanBundle();
+    private final Environment environment = new Environment(
+            "test", Jackson.newObjectMapper(), Validators.newValidator(), new MetricRegistry(), getClass().getClassLoader());
+
+    private InfinispanConfiguration configuration;
+
+    @After
+    public void tearDown() {
+        bundle.getCacheManager().stop();
+        for (String name : configuration.getCacheManagers().keySet()) {
+            bundle.getCacheManager(name).stop();
+        }
+    }
+
+    @Test
+    public void run_shouldBuildEachNamedCacheManagerWithItsOwnProviderAndMetrics() throws Exception {
+        configuration = fromYaml(
+                "type: standalone\n" +
+                "cacheManagers:\n" +
+                "  churn:\n" +
+                "    type: standalone\n" +
+                "  bulk:\n" +
+                "    type: standalone\n"
+        );
+
+        bundle.run(() -> configuration, environment);
+        InfinispanCacheManager churn = bundle.getInfinispanCacheManagerProvider("churn").get();
+        InfinispanCacheManager bulk = bundle.getInfinispanCacheManagerProvider("bulk").get();
+        churn.start();
+        bulk.start();
+        bundle.getCacheManager().start();
+
+        assertThat(churn).isNotSameAs(bulk).isNotSameAs(bundle.getCacheManager());
+        churn.getCache("sessions").put("key", "churn");
+        bulk.getCache("sessions").put("key", "bulk");
+        bundle.getCacheManager().getCache("sessions");
+        assertThat(churn.getCache("sessions").get("key")).isEqualTo("churn");
+        assertThat(bulk.getCache("sessions").get("key")).isEqualTo("bulk");
+
+        assertThat(environment.metrics().getGauges()).containsKeys(
+                "uk.gov.ida.infinispan.sessions.numberOfEntries",
+                "uk.gov.ida.infinispan.churn.sessions.numberOfEntries",
+                "uk.gov.ida.infinispan.bulk.sessions.numberOfEntries");
+        assertThat(environment.healthChecks().getNames()).contains(
+                "Infinispan Health Check", "Infinispan Health Check churn", "Infinispan Health Check bulk");
+    }
+
+    @Test
+    public void run_shouldNotRegisterTheHotKeysResourceUnlessHotKeysAreConfigured() throws Exception {
+        configuration = fromYaml("type: standalone\n");
+
+        bundle.run(() -> configuration, environment);
+
+        assertThat(environment.jersey().getResourceConfig().getSingletons()).noneMatch(HotKeysResource.class::isInstance);
+    }
+
+    @Test
+    public void run_shouldRegisterTheHotKeysResourceWhenANamedCacheManagerSamplesHotKeys() throws Exception {
+        configuration = fromYaml(
+                "type: standalone\n" +
+                "cacheManagers:\n" +
+                "  churn:\n" +
+                "    type: standalone\n" +
+                "    hotKeys:\n" +
+                "      sampleRate: 0.5\n"
+        );
+
+        bundle.run(() -> configuration, environment);
+
+        assertThat(environment.jersey().getResourceConfig().getSingletons()).anyMatch(HotKeysResource.class::isInstance);
+    }
+}
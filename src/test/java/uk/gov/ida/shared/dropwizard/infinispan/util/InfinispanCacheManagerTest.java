@@ -0,0 +1,317 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import io.dropwizard.util.Duration;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.eviction.EvictionStrategy;
+import org.infinispan.eviction.EvictionThreadPolicy;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.gov.ida.shared.dropwizard.infinispan.config.ClusteringMode;
+import uk.gov.ida.shared.dropwizard.infinispan.config.EvictionConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.HotKeysConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NamedCacheConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.NearCacheConfiguration;
+import uk.gov.ida.shared.dropwizard.infinispan.config.PreloadConfiguration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.HotKeySampler.reportedKey;
+
+public class InfinispanCacheManagerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private MetricRegistry metricRegistry = new MetricRegistry();
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @Before
+    public void setUp() {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.jmxStatistics().enable();
+        infinispanCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(configurationBuilder.build()),
+                new InfinispanCacheManagerOptions().caches(ImmutableMap.of(
+                        "named", new NamedCacheConfiguration(Optional.of(ClusteringMode.local), Optional.absent(), Optional.absent()),
+                        "bounded", new NamedCacheConfiguration(Optional.absent(), Optional.absent(),
+                                Optional.of(new EvictionConfiguration(10, EvictionStrategy.LRU, EvictionThreadPolicy.DEFAULT))),
+                        "timed", new NamedCacheConfiguration(Optional.absent(), Optional.absent(), Optional.absent(), Optional.of(true), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent()),
+                        "near", new NamedCacheConfiguration(Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(),
+                                Optional.of(new NearCacheConfiguration(10, Duration.minutes(1))))
+                ))
+        );
+        infinispanCacheManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        infinispanCacheManager.stop();
+    }
+
+    @Test
+    public void getCache_shouldDefineNamedCacheFromConfiguration() {
+        Cache<String, String> cache = infinispanCacheManager.getCache("named");
+
+        assertThat(cache.getCacheConfiguration().clustering().cacheMode()).isEqualTo(CacheMode.LOCAL);
+        assertThat(cache.getCacheConfiguration().jmxStatistics().enabled()).isTrue();
+        assertThat(infinispanCacheManager.getEmbeddedCacheManager().getCacheConfiguration("named")).isNotNull();
+    }
+
+    @Test
+    public void getCache_shouldUseDefaultConfigurationForUnconfiguredCache() {
+        Cache<String, String> cache = infinispanCacheManager.getCache("unconfigured");
+
+        assertThat(cache.getCacheConfiguration().clustering().cacheMode()).isEqualTo(CacheMode.LOCAL);
+        assertThat(infinispanCacheManager.getEmbeddedCacheManager().getCacheNames()).containsOnly("unconfigured");
+    }
+
+    @Test
+    public void getCache_shouldReturnSameHandleAndRegisterMetricsOnce() {
+        Cache<String, String> cache = infinispanCacheManager.getCache("named");
+        int metricCount = metricRegistry.getMetrics().size();
+
+        assertThat(infinispanCacheManager.<String, String>getCache("named")).isSameAs(cache);
+        assertThat(infinispanCacheManager.<String, String>getBulkCache("named").getCache()).isSameAs(cache);
+        assertThat(metricRegistry.getGauges()).containsKey("uk.gov.ida.infinispan.named.hits");
+        assertThat(metricRegistry.getMetrics().size()).isEqualTo(metricCount + 4);
+        assertThat(infinispanCacheManager.getBulkCache("named")).isSameAs(infinispanCacheManager.getBulkCache("named"));
+    }
+
+    @Test
+    public void getCache_shouldTimeOperationsWhenEnabledForCache() {
+        Cache<String, String> cache = infinispanCacheManager.getCache("timed");
+
+        cache.put("key", "value");
+        cache.get("key");
+        cache.get("key");
+        cache.get("absent");
+        cache.remove("key");
+        cache.putAll(ImmutableMap.of("a", "1", "b", "2"));
+
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.put.local").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.get.hit.local").getCount()).isEqualTo(2);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.get.miss.local").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.remove.local").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.putAll").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.timed.get.hit.remote").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void getCache_shouldNotTimeOperationsByDefault() {
+        infinispanCacheManager.getCache("named").get("key");
+
+        assertThat(metricRegistry.getTimers()).doesNotContainKey("uk.gov.ida.infinispan.named.get.miss.local");
+    }
+
+    @Test
+    public void getCache_shouldServeRepeatReadsFromNearCacheUntilEntryChanges() {
+        Cache<String, String> cache = infinispanCacheManager.getCache("near");
+
+        cache.put("key", "first");
+        assertThat(cache.get("key")).isEqualTo("first");
+        assertThat(cache.get("key")).isEqualTo("first");
+        cache.getAdvancedCache().put("key", "second");
+        assertThat(cache.get("key")).isEqualTo("second");
+        cache.remove("key");
+        assertThat(cache.get("key")).isNull();
+
+        assertThat(metricRegistry.getGauges().get("uk.gov.ida.infinispan.near.nearCacheHitRatio").getValue()).isEqualTo(0.25);
+        assertThat(metricRegistry.getGauges().get("uk.gov.ida.infinispan.near.nearCacheSize").getValue()).isEqualTo(0L);
+    }
+
+    @Test
+    public void getCache_shouldOnlyAnswerGetFromNearCache() throws Exception {
+        Cache<String, String> cache = infinispanCacheManager.getCache("near");
+        cache.put("key", "value");
+
+        assertThat(cache.getAsync("key").get()).isEqualTo("value");
+        assertThat(cache.getAdvancedCache().get("key")).isEqualTo("value");
+        assertThat(((NearCache<String, String>) cache).stats().requestCount()).isZero();
+
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(cache.getAdvancedCache().getCacheEntry("key").getValue()).isEqualTo("value");
+        assertThat(((NearCache<String, String>) cache).stats().requestCount()).isEqualTo(1);
+        assertThat(((NearCache<String, String>) cache).heldValues()).isEqualTo(1);
+    }
+
+    @Test
+    public void getCache_shouldBoundNamedCacheAndMeterEvictions() {
+        Cache<Integer, String> cache = infinispanCacheManager.getCache("bounded");
+
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "value");
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(10);
+        assertThat(metricRegistry.meter("uk.gov.ida.infinispan.bounded.evictionRate").getCount()).isGreaterThanOrEqualTo(90);
+    }
+
+    @Test
+    public void getCache_shouldCountPassivationsAndActivations() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.eviction().maxEntries(10).strategy(EvictionStrategy.LRU);
+        configurationBuilder.persistence().passivation(true).addSingleFileStore().location(temporaryFolder.newFolder().getAbsolutePath());
+        InfinispanCacheManager passivatingCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(),
+                        configurationBuilder.build()
+                )
+        );
+        passivatingCacheManager.start();
+        try {
+            Cache<Integer, String> cache = passivatingCacheManager.getCache("passivating");
+            for (int i = 0; i < 100; i++) {
+                cache.put(i, "value");
+            }
+
+            assertThat(cache.get(0)).isEqualTo("value");
+            assertThat(metricRegistry.counter("uk.gov.ida.infinispan.passivating.passivations").getCount()).isGreaterThanOrEqualTo(90);
+            assertThat(metricRegistry.counter("uk.gov.ida.infinispan.passivating.activations").getCount()).isGreaterThanOrEqualTo(1);
+        } finally {
+            passivatingCacheManager.stop();
+        }
+    }
+
+    @Test
+    public void getCache_shouldReportPendingModificationsForWriteBehindStore() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.persistence().addSingleFileStore().location(temporaryFolder.newFolder().getAbsolutePath())
+                .async().enable().modificationQueueSize(1024).threadPoolSize(1);
+        InfinispanCacheManager writeBehindCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(),
+                        configurationBuilder.build()
+                )
+        );
+        writeBehindCacheManager.start();
+        try {
+            Cache<Integer, String> cache = writeBehindCacheManager.getCache("write-behind");
+            cache.put(1, "value");
+
+            Gauge<?> pendingModifications = metricRegistry.getGauges().get("uk.gov.ida.infinispan.write-behind.pendingStoreModifications");
+            assertThat(pendingModifications).isNotNull();
+            assertThat((Integer) pendingModifications.getValue()).isBetween(0, 1);
+        } finally {
+            writeBehindCacheManager.stop();
+        }
+    }
+
+    @Test
+    public void getExpiringCache_shouldExpireEntriesAndTimeReaperSweeps() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.expiration().reaperEnabled(false).wakeUpInterval(50);
+        InfinispanCacheManager reapingCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(),
+                        configurationBuilder.build()
+                ),
+                new InfinispanCacheManagerOptions().caches(ImmutableMap.of("idle", new NamedCacheConfiguration(Optional.absent(), Optional.absent(), Optional.absent(), Optional.absent(),
+                        Optional.of(Duration.minutes(5)), Optional.of(Duration.milliseconds(20)), Optional.absent(), Optional.absent())))
+        );
+        reapingCacheManager.start();
+        try {
+            ExpiringCache<Integer, String> cache = reapingCacheManager.getExpiringCache("reaped");
+            for (int i = 0; i < 10; i++) {
+                cache.put(i, "value", Duration.milliseconds(10), Duration.minutes(1));
+            }
+            cache.put(10, "value", Duration.minutes(1), Duration.minutes(1));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (metricRegistry.meter("uk.gov.ida.infinispan.reaped.reaperPurgedEntries").getCount() < 10 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(metricRegistry.meter("uk.gov.ida.infinispan.reaped.reaperPurgedEntries").getCount()).isEqualTo(10);
+            assertThat(metricRegistry.timer("uk.gov.ida.infinispan.reaped.reaperSweepDuration").getCount()).isGreaterThanOrEqualTo(1);
+            assertThat(cache.getCache().getAdvancedCache().getDataContainer().size()).isEqualTo(1);
+
+            Cache<Integer, String> idleCache = reapingCacheManager.getCache("idle");
+            assertThat(idleCache.getCacheConfiguration().expiration().maxIdle()).isEqualTo(Duration.minutes(5).toMilliseconds());
+            assertThat(idleCache.getCacheConfiguration().expiration().wakeUpInterval()).isEqualTo(20);
+        } finally {
+            reapingCacheManager.stop();
+        }
+    }
+
+    @Test
+    public void getHotKeys_shouldReportTheHottestKeysReadAndWrittenInEachCache() {
+        InfinispanCacheManager samplingCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build()),
+                new InfinispanCacheManagerOptions().hotKeys(Optional.of(new HotKeysConfiguration(1, 1, Duration.minutes(1), 64, 4)))
+        );
+        samplingCacheManager.start();
+        try {
+            Cache<String, String> cache = samplingCacheManager.getCache("sampled");
+            cache.putAll(ImmutableMap.of("hot", "value", "cold", "value"));
+            cache.put("hot", "value");
+            for (int i = 0; i < 5; i++) {
+                cache.get("hot");
+            }
+            cache.get("cold");
+
+            HotKeys hotKeys = samplingCacheManager.getHotKeys().get("sampled");
+            assertThat(hotKeys.getReads()).extracting(HotKeys.HotKey::getKey, HotKeys.HotKey::getCount).containsExactly(tuple(reportedKey("hot"), 5L));
+            assertThat(hotKeys.getWrites()).extracting(HotKeys.HotKey::getKey, HotKeys.HotKey::getCount).containsExactly(tuple(reportedKey("hot"), 2L));
+        } finally {
+            samplingCacheManager.stop();
+        }
+    }
+
+    @Test
+    public void start_shouldPreloadPersistedEntriesInBackground() throws Exception {
+        String location = temporaryFolder.newFolder().getAbsolutePath();
+        InfinispanCacheManager writingCacheManager = persistentCacheManager(location, Optional.absent());
+        writingCacheManager.start();
+        Cache<Integer, String> writingCache = writingCacheManager.getCache("persisted");
+        for (int i = 0; i < 100; i++) {
+            writingCache.put(i, "value");
+        }
+        writingCacheManager.stop();
+
+        InfinispanCacheManager preloadingCacheManager = persistentCacheManager(location, Optional.of(new PreloadConfiguration(2, ImmutableList.of("persisted"))));
+        preloadingCacheManager.start();
+        try {
+            PreloadProgress preloadProgress = preloadingCacheManager.getPreloadProgress().get();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!preloadProgress.isComplete() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(preloadProgress.isComplete()).isTrue();
+            assertThat(preloadProgress.getEntriesLoaded()).isEqualTo(100);
+            Cache<Integer, String> preloadedCache = preloadingCacheManager.getCache("persisted");
+            assertThat(preloadedCache.getAdvancedCache().getDataContainer().size()).isEqualTo(100);
+        } finally {
+            preloadingCacheManager.stop();
+        }
+    }
+
+    private InfinispanCacheManager persistentCacheManager(String location, Optional<PreloadConfiguration> preloadConfiguration) {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.persistence().addSingleFileStore().location(location);
+        return new InfinispanCacheManager(
+                new MetricRegistry(),
+                new DefaultCacheManager(
+                        new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(),
+                        configurationBuilder.build()
+                ),
+                new InfinispanCacheManagerOptions().preload(preloadConfiguration)
+        );
+    }
+}
@@ -0,0 +1,65 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TestClusters.await;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TestClusters.startNode;
+
+public class InstrumentedReplicationQueueTest {
+
+    private static final String INITIAL_HOSTS = "127.0.0.1[7960],127.0.0.1[7961]";
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private InfinispanCacheManager node;
+    private InfinispanCacheManager other;
+
+    @After
+    public void tearDown() {
+        if (other != null) {
+            other.stop();
+        }
+        if (node != null) {
+            node.stop();
+        }
+    }
+
+    @Test
+    public void flush_shouldTimeEachBatchAndRecordItsSize() throws Exception {
+        node = startNode("replication-queue", 7960, INITIAL_HOSTS, metricRegistry, queueing());
+        other = startNode("replication-queue", 7961, INITIAL_HOSTS, new MetricRegistry(), queueing());
+        Cache<Integer, String> cache = node.getCache("queued");
+        Cache<Integer, String> replica = other.getCache("queued");
+        await(() -> cache.getAdvancedCache().getRpcManager().getMembers().size() == 2);
+
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "value");
+        }
+        await(() -> replica.size() == 10);
+
+        assertThat(replica.size()).isEqualTo(10);
+        long flushes = metricRegistry.timer("uk.gov.ida.infinispan.queued.replicationQueueFlush").getCount();
+        Histogram batchSizes = metricRegistry.histogram("uk.gov.ida.infinispan.queued.replicationQueueBatchSize");
+        assertThat(flushes).isBetween(1L, 10L);
+        assertThat(batchSizes.getCount()).isEqualTo(flushes);
+        assertThat(batchSizes.getSnapshot().getMax()).isBetween(1L, 10L);
+        Gauge<?> queueSize = metricRegistry.getGauges().get("uk.gov.ida.infinispan.queued.replicationQueueSize");
+        assertThat((Integer) queueSize.getValue()).isZero();
+    }
+
+    private static ConfigurationBuilder queueing() {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.clustering().cacheMode(CacheMode.REPL_ASYNC)
+                .async().useReplQueue(true).replQueueMaxElements(1000).replQueueInterval(50, TimeUnit.MILLISECONDS);
+        return configurationBuilder;
+    }
+}
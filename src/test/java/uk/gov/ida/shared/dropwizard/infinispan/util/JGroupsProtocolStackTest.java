@@ -0,0 +1,51 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import org.jgroups.JChannel;
+import org.junit.Test;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+public class JGroupsProtocolStackTest {
+
+    @Test
+    public void createChannel_shouldApplyTransportConfiguration() throws Exception {
+        InfinispanConfiguration configuration = fromYaml(
+                "type: insecure\n" +
+                "clusterName: cluster\n" +
+                "bindAddress: 127.0.0.1\n" +
+                "initialHosts: localhost[7800]\n" +
+                "transport:\n" +
+                "  oobThreadPool:\n" +
+                "    minThreads: 4\n" +
+                "    maxThreads: 60\n" +
+                "    keepAliveTime: 30s\n" +
+                "    queueEnabled: true\n" +
+                "    queueMaxSize: 500\n" +
+                "  maxBundleTimeout: 5ms\n" +
+                "  maxCredits: 400000\n" +
+                "  fragSize: 30000\n"
+        );
+
+        JChannel channel = new JGroupsProtocolStack(configuration, false).createChannel();
+        try {
+            Map<String, Map<String, Object>> values = JGroupsProtocolStack.effectiveValues(channel);
+
+            assertThat(values.get("TCP"))
+                    .containsEntry("oob_thread_pool.max_threads", 60)
+                    .containsEntry("oob_thread_pool.keep_alive_time", 30000L)
+                    .containsEntry("oob_thread_pool.queue_max_size", 500)
+                    .containsEntry("thread_pool.max_threads", 30)
+                    .containsEntry("max_bundle_size", 64000)
+                    .containsEntry("max_bundle_timeout", 5L)
+                    .containsEntry("recv_buf_size", 20000000);
+            assertThat(values.get("MFC")).containsEntry("max_credits", 400000L).containsEntry("min_credits", 70000L);
+            assertThat(values.get("FRAG2")).containsEntry("frag_size", 30000);
+        } finally {
+            channel.close();
+        }
+    }
+}
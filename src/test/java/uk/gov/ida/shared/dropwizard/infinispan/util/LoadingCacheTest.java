@@ -0,0 +1,148 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import io.dropwizard.util.Duration;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.gov.ida.shared.dropwizard.infinispan.config.RefreshAheadConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.fail;
+
+public class LoadingCacheTest {
+
+    private MetricRegistry metricRegistry = new MetricRegistry();
+    private ExecutorService callers = Executors.newFixedThreadPool(8);
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @Before
+    public void setUp() {
+        infinispanCacheManager = new InfinispanCacheManager(metricRegistry, new DefaultCacheManager(new ConfigurationBuilder().build()));
+        infinispanCacheManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        callers.shutdownNow();
+        infinispanCacheManager.stop();
+    }
+
+    @Test
+    public void get_shouldRunOneLoadForConcurrentMisses() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        LoadingCache<String, String> cache = infinispanCacheManager.getLoadingCache("loading", key -> {
+            loads.incrementAndGet();
+            awaitQuietly(release);
+            return key.toUpperCase();
+        });
+
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(callers.submit(() -> cache.get("key")));
+        }
+        while (metricRegistry.meter("uk.gov.ida.infinispan.loading.coalescedLoads").getCount() < 7) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("KEY");
+        }
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.getCache().get("key")).isEqualTo("KEY");
+        assertThat(metricRegistry.timer("uk.gov.ida.infinispan.loading.loadLatency").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_shouldPropagateLoadFailureAndRetryOnNextMiss() {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String, String> cache = infinispanCacheManager.getLoadingCache("failing", key -> {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException("backend unavailable");
+            }
+            return "value";
+        });
+
+        try {
+            cache.get("key");
+            fail("expected the load to fail");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage()).isEqualTo("backend unavailable");
+        }
+
+        assertThat(cache.get("key")).isEqualTo("value");
+        assertThat(metricRegistry.meter("uk.gov.ida.infinispan.failing.loadFailures").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_shouldWaitForValueWhileAnotherNodeHoldsTheClusterLock() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        LoadingCache<String, String> cache = infinispanCacheManager.getLoadingCache("locked", key -> {
+            loads.incrementAndGet();
+            return "loaded here";
+        }, Duration.seconds(10));
+        Cache<String, String> locks = infinispanCacheManager.getEmbeddedCacheManager().getCache("locked.loaderLocks");
+        locks.put("key", "another node");
+
+        Future<String> result = callers.submit(() -> cache.get("key"));
+        Thread.sleep(100);
+        cache.getCache().put("key", "loaded elsewhere");
+        locks.remove("key");
+
+        assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("loaded elsewhere");
+        assertThat(loads.get()).isZero();
+        assertThat(locks).isEmpty();
+    }
+
+    @Test
+    public void get_shouldServeCurrentValueAndRefreshInBackgroundNearExpiry() throws Exception {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.expiration().lifespan(60, TimeUnit.SECONDS);
+        InfinispanCacheManager refreshingCacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(new GlobalConfigurationBuilder().globalJmxStatistics().allowDuplicateDomains(true).build(), configurationBuilder.build()),
+                new InfinispanCacheManagerOptions().refreshAhead(Optional.of(new RefreshAheadConfiguration(Duration.seconds(59), 1, 10)))
+        );
+        refreshingCacheManager.start();
+        try {
+            AtomicInteger loads = new AtomicInteger();
+            LoadingCache<String, String> cache = refreshingCacheManager.getLoadingCache("refreshing", key -> "value-" + loads.incrementAndGet());
+
+            assertThat(cache.get("key")).isEqualTo("value-1");
+            Thread.sleep(1100);
+            assertThat(cache.get("key")).isEqualTo("value-1");
+            while (metricRegistry.meter("uk.gov.ida.infinispan.refreshing.refreshes").getCount() < 1) {
+                Thread.sleep(5);
+            }
+
+            assertThat(cache.getCache().get("key")).isEqualTo("value-2");
+            assertThat(metricRegistry.timer("uk.gov.ida.infinispan.refreshing.refreshLatency").getCount()).isEqualTo(1);
+        } finally {
+            refreshingCacheManager.stop();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.container.AsyncResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class NonBlockingCacheTest {
+
+    private ExecutorService completionExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "completion"));
+    private InfinispanCacheManager infinispanCacheManager;
+
+    @Before
+    public void setUp() {
+        infinispanCacheManager = new InfinispanCacheManager(new MetricRegistry(), new DefaultCacheManager(new ConfigurationBuilder().build()));
+        infinispanCacheManager.start();
+    }
+
+    @After
+    public void tearDown() {
+        infinispanCacheManager.stop();
+        completionExecutor.shutdown();
+    }
+
+    @Test
+    public void shouldCompleteOperationsOnCompletionExecutor() throws Exception {
+        NonBlockingCache<String, String> cache = infinispanCacheManager.getNonBlockingCache("non-blocking", completionExecutor);
+
+        cache.put("key", "value").get(5, TimeUnit.SECONDS);
+        // hold the completion thread so the callback is attached before the future completes
+        CountDownLatch release = new CountDownLatch(1);
+        completionExecutor.execute(() -> awaitQuietly(release));
+        CompletableFuture<String> completingThreadName = cache.get("key").thenApply(value -> Thread.currentThread().getName());
+        release.countDown();
+        String completingThread = completingThreadName.get(5, TimeUnit.SECONDS);
+
+        assertThat(cache.get("key").get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        assertThat(completingThread).isEqualTo("completion");
+        assertThat(cache.remove("key").get(5, TimeUnit.SECONDS)).isEqualTo("value");
+        assertThat(cache.get("key").get(5, TimeUnit.SECONDS)).isNull();
+    }
+
+    @Test
+    public void shouldResumeAsyncResponseWithResultOrCause() {
+        AsyncResponse succeeded = mock(AsyncResponse.class);
+        AsyncResponse failed = mock(AsyncResponse.class);
+        IllegalStateException failure = new IllegalStateException();
+
+        AsyncResponses.resume(succeeded, CompletableFuture.completedFuture("value"));
+        AsyncResponses.resume(failed, CompletableFuture.completedFuture("value").thenApply(value -> {
+            throw failure;
+        }));
+
+        verify(succeeded).resume("value");
+        verify(failed).resume(failure);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.remoting.transport.jgroups.JGroupsTransport;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+/**
+ * Starts clustered cache managers on loopback for tests which need more than one node.
+ */
+final class TestClusters {
+
+    private TestClusters() {
+    }
+
+    /**
+     * @param initialHosts every node's address, for example {@code 127.0.0.1[7960],127.0.0.1[7961]}
+     */
+    static InfinispanCacheManager startNode(String clusterName, int port, String initialHosts, MetricRegistry metricRegistry, ConfigurationBuilder configurationBuilder) throws Exception {
+        JGroupsTransport transport = new JGroupsTransport(new JGroupsProtocolStack(fromYaml(
+                "type: insecure\n" +
+                "clusterName: " + clusterName + "\n" +
+                "bindAddress: 127.0.0.1\n" +
+                "port: " + port + "\n" +
+                "initialHosts: " + initialHosts + "\n"
+        ), false).createChannel());
+        configurationBuilder.jmxStatistics().enable();
+        GlobalConfigurationBuilder globalConfigurationBuilder = GlobalConfigurationBuilder.defaultClusteredBuilder();
+        globalConfigurationBuilder.globalJmxStatistics().allowDuplicateDomains(true);
+        globalConfigurationBuilder.transport().transport(transport).clusterName(clusterName);
+        InfinispanCacheManager cacheManager = new InfinispanCacheManager(
+                metricRegistry,
+                new DefaultCacheManager(globalConfigurationBuilder.build(), configurationBuilder.build())
+        );
+        cacheManager.start();
+        return cacheManager;
+    }
+
+    /**
+     * Waits up to ten seconds for the condition, leaving the caller's assertions to report a timeout.
+     */
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.google.common.base.Optional;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TopologyEvent.Type.viewChange;
+
+public class TopologyHistoryTest {
+
+    @Test
+    public void getEvents_shouldKeepTheMostRecentEventsOldestFirst() {
+        TopologyHistory history = new TopologyHistory(3);
+
+        for (int viewId = 1; viewId <= 5; viewId++) {
+            history.add(new TopologyEvent(viewChange, Optional.absent(), viewId, Collections.emptyList(), Optional.absent(), Optional.absent()));
+        }
+
+        assertThat(history.getEvents()).extracting(TopologyEvent::getId).containsExactly(3, 4, 5);
+    }
+}
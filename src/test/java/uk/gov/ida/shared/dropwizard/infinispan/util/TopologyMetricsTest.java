@@ -0,0 +1,64 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.MetricRegistry;
+import org.infinispan.Cache;
+import org.infinispan.configuration.cache.CacheMode;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TestClusters.await;
+import static uk.gov.ida.shared.dropwizard.infinispan.util.TestClusters.startNode;
+
+public class TopologyMetricsTest {
+
+    private static final String INITIAL_HOSTS = "127.0.0.1[7970],127.0.0.1[7971]";
+
+    private final MetricRegistry firstMetrics = new MetricRegistry();
+    private final MetricRegistry joinerMetrics = new MetricRegistry();
+    private InfinispanCacheManager first;
+    private InfinispanCacheManager joiner;
+
+    @After
+    public void tearDown() {
+        if (joiner != null) {
+            joiner.stop();
+        }
+        if (first != null) {
+            first.stop();
+        }
+    }
+
+    @Test
+    public void shouldMeterViewChangesAndTimeTheRebalanceWhenANodeJoins() throws Exception {
+        first = startNode("topology-metrics", 7970, INITIAL_HOSTS, firstMetrics, replicated());
+        Cache<Integer, String> cache = first.getCache("replicated");
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "value");
+        }
+
+        joiner = startNode("topology-metrics", 7971, INITIAL_HOSTS, joinerMetrics, replicated());
+        Cache<Integer, String> replica = joiner.getCache("replicated");
+        // rebalance events reach the listener asynchronously
+        await(() -> firstMetrics.timer("uk.gov.ida.infinispan.replicated.rebalanceDuration").getCount() >= 1);
+
+        assertThat(replica.getAdvancedCache().getDataContainer().size()).isEqualTo(100);
+        assertThat(firstMetrics.meter("uk.gov.ida.infinispan.viewChanges").getCount()).isGreaterThanOrEqualTo(1);
+        assertThat(firstMetrics.meter("uk.gov.ida.infinispan.merges").getCount()).isZero();
+        assertThat(firstMetrics.meter("uk.gov.ida.infinispan.replicated.topologyChanges").getCount()).isGreaterThanOrEqualTo(1);
+        assertThat(firstMetrics.timer("uk.gov.ida.infinispan.replicated.rebalanceDuration").getCount()).isGreaterThanOrEqualTo(1);
+        // the first node already held every entry, so the rebalance brought it none
+        assertThat(firstMetrics.histogram("uk.gov.ida.infinispan.replicated.rebalanceEntriesReceived").getSnapshot().getMax()).isZero();
+        assertThat(joinerMetrics.timer("uk.gov.ida.infinispan.replicated.rebalanceDuration").getCount()).isEqualTo(1);
+        assertThat(joinerMetrics.histogram("uk.gov.ida.infinispan.replicated.rebalanceEntriesReceived").getSnapshot().getMax()).isEqualTo(100);
+        assertThat(first.getTopologyEvents()).extracting(TopologyEvent::getType)
+                .contains(TopologyEvent.Type.viewChange, TopologyEvent.Type.rebalanceStart, TopologyEvent.Type.rebalanceEnd);
+    }
+
+    private static ConfigurationBuilder replicated() {
+        ConfigurationBuilder configurationBuilder = new ConfigurationBuilder();
+        configurationBuilder.clustering().cacheMode(CacheMode.REPL_SYNC);
+        return configurationBuilder;
+    }
+}
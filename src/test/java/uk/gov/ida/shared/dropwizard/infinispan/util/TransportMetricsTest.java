@@ -0,0 +1,66 @@
+package uk.gov.ida.shared.dropwizard.infinispan.util;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.jgroups.JChannel;
+import org.jgroups.Message;
+import org.junit.Test;
+import uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfiguration;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static uk.gov.ida.shared.dropwizard.infinispan.config.InfinispanConfigurationFixtures.fromYaml;
+
+public class TransportMetricsTest {
+
+    private final MetricRegistry registry = new MetricRegistry();
+
+    @Test
+    public void register_shouldReportProtocolCounters() throws Exception {
+        JChannel channel = channel(7950);
+        JChannel other = channel(7951);
+        try {
+            TransportMetrics.register(registry, "infinispan", channel);
+            channel.connect("transport-metrics");
+            other.connect("transport-metrics");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (channel.getView().size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            channel.send(new Message(null, new byte[100000]));
+            // messages are sent from the bundler's queue, after send returns
+            while (gauge("bytesSent") < 100000 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(gauge("bytesSent")).isGreaterThanOrEqualTo(100000);
+            assertThat(gauge("messagesSent")).isGreaterThanOrEqualTo(2);
+            assertThat(gauge("frag2.fragmentsSent")).isEqualTo(2);
+            assertThat(gauge("nakack2.xmitRequestsSent")).isZero();
+            assertThat(gauge("unicast2.xmitRequestsSent")).isZero();
+            assertThat(gauge("mfc.blockings")).isZero();
+            assertThat(registry.getGauges()).containsKeys("infinispan.transport.oobThreadPool.queueSize", "infinispan.transport.threadPool.active");
+        } finally {
+            other.close();
+            channel.close();
+        }
+    }
+
+    private static JChannel channel(int port) throws Exception {
+        InfinispanConfiguration configuration = fromYaml(
+                "type: insecure\n" +
+                "clusterName: transport-metrics\n" +
+                "bindAddress: 127.0.0.1\n" +
+                "port: " + port + "\n" +
+                "initialHosts: 127.0.0.1[7950],127.0.0.1[7951]\n"
+        );
+        return new JGroupsProtocolStack(configuration, false).createChannel();
+    }
+
+    private long gauge(String name) {
+        Gauge<?> gauge = registry.getGauges().get("infinispan.transport." + name);
+        return ((Number) gauge.getValue()).longValue();
+    }
+}